@@ -0,0 +1,374 @@
+package cs224n.assignments;
+
+import cs224n.assignments.CoreferenceTester.DataType;
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.coref.Document;
+import cs224n.coref.Entity;
+import cs224n.coref.Mention;
+import cs224n.coref.Sentence;
+import cs224n.coref.SymbolTable;
+import cs224n.ling.Tree;
+import cs224n.util.IOUtils;
+import cs224n.util.StringUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A compact binary encoding of a SerializedDatum, as an alternative to the
+ * plaintext encoding in SerializedDatum.encode().
+ *
+ * Every string in the document (words, lemmas, POS tags, NER tags, speakers and
+ * parse labels) is stored once in a string table at the head of the datum; the
+ * sentences are then stored as parallel int columns into this table, and parse trees
+ * as preorder arrays of (label, number of children).
+ * All integers are written as variable length ints.
+ *
+ * Running main() converts every .dat file in the train, dev and test directories
+ * into a .bin file alongside it; CoreferenceTester will read the .bin file in
+ * preference to the .dat file when it exists.
+ */
+public class BinaryCorpus {
+  private static final int MAGIC = 0xC0AEF001;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  public static final String EXTENSION = ".bin";
+
+  private BinaryCorpus(){ }
+
+  //--------------
+  // ENCODING
+  //--------------
+  private static class Encoder {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final Map<String,Integer> stringIndex = new HashMap<String,Integer>();
+    private final List<String> strings = new ArrayList<String>();
+
+    private int intern(String str){
+      Integer index = stringIndex.get(str);
+      if(index == null){
+        index = strings.size();
+        strings.add(str);
+        stringIndex.put(str, index);
+      }
+      return index;
+    }
+
+    private void writeInt(int value){ writeVarInt(bytes, value); }
+
+    private void writeColumn(List<String> column){
+      for(String str : column){ writeInt(intern(str)); }
+    }
+
+    private void writeTree(Tree<String> tree){
+      //(count nodes)
+      List<Tree<String>> preorder = tree.getPreOrderTraversal();
+      writeInt(preorder.size());
+      //(labels)
+      for(Tree<String> node : preorder){ writeInt(intern(node.getLabel())); }
+      //(arity)
+      for(Tree<String> node : preorder){ writeInt(node.getChildren().size()); }
+    }
+
+    private void writeMention(Mention m, Map<Sentence,Integer> sentenceIndices){
+      writeInt(sentenceIndices.get(m.sentence));
+      writeInt(m.beginIndexInclusive);
+      writeInt(m.endIndexExclusive);
+      writeInt(m.headWordIndex);
+      writeTree(m.parse);
+    }
+
+    private byte[] encode(SerializedDatum datum){
+      //--Document
+      Document doc = datum.document;
+      Map<Sentence,Integer> sentenceIndices = new IdentityHashMap<Sentence,Integer>();
+      writeInt(doc.sentences.size());
+      for(Sentence s : doc.sentences){
+        sentenceIndices.put(s, sentenceIndices.size());
+        writeInt(s.length());
+        writeColumn(s.words);
+        writeColumn(s.lemmas);
+        writeColumn(s.posTags);
+        writeColumn(s.nerTags);
+        writeColumn(s.speakersOfWord);
+        writeTree(s.parse);
+      }
+      //--Mentions
+      writeInt(datum.goldMentions.size());
+      for(Mention m : datum.goldMentions){ writeMention(m, sentenceIndices); }
+      writeInt(datum.predictedMentions.size());
+      for(Mention m : datum.predictedMentions){ writeMention(m, sentenceIndices); }
+      //--Gold Clusters
+      Map<Mention,Integer> mentionIndices = new HashMap<Mention,Integer>();
+      for(int i=0; i<datum.goldMentions.size(); i++){ mentionIndices.put(datum.goldMentions.get(i), i); }
+      writeInt(datum.goldClusters.size());
+      for(Entity e : datum.goldClusters){
+        writeInt(e.size());
+        for(Mention m : e.mentions){
+          Integer index = mentionIndices.get(m);
+          if(index == null){ throw new IllegalStateException("Gold cluster contains a mention not in the gold mentions: " + m); }
+          writeInt(index);
+        }
+      }
+      //--Header
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      writeVarInt(header, MAGIC);
+      writeString(header, doc.id);
+      writeVarInt(header, strings.size());
+      for(String str : strings){ writeString(header, str); }
+      byte[] body = bytes.toByteArray();
+      header.write(body, 0, body.length);
+      return header.toByteArray();
+    }
+  }
+
+  private static void writeVarInt(ByteArrayOutputStream out, int value){
+    while((value & ~0x7F) != 0){
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static void writeString(ByteArrayOutputStream out, String str){
+    byte[] encoded = str.getBytes(UTF8);
+    writeVarInt(out, encoded.length);
+    out.write(encoded, 0, encoded.length);
+  }
+
+  /**
+   * Encode a datum into the binary format
+   * @param datum The datum to encode
+   * @return The bytes of the encoded datum
+   */
+  public static byte[] encode(SerializedDatum datum){
+    return new Encoder().encode(datum);
+  }
+
+  //--------------
+  // DECODING
+  //--------------
+  private static int readVarInt(ByteBuffer in){
+    int value = 0;
+    int shift = 0;
+    while(true){
+      byte b = in.get();
+      value |= (b & 0x7F) << shift;
+      if((b & 0x80) == 0){ return value; }
+      shift += 7;
+    }
+  }
+
+  private static String readString(ByteBuffer in){
+    int length = readVarInt(in);
+    if(in.hasArray()){
+      String rtn = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+      in.position(in.position() + length);
+      return rtn;
+    } else {
+      byte[] encoded = new byte[length];
+      in.get(encoded);
+      return new String(encoded, UTF8);
+    }
+  }
+
+  private static int[] readColumn(ByteBuffer in, int[] symbols, int length){
+    int[] column = new int[length];
+    for(int i=0; i<length; i++){ column[i] = symbols[readVarInt(in)]; }
+    return column;
+  }
+
+  private static Tree<String> readTree(ByteBuffer in, String[] strings){
+    int size = readVarInt(in);
+    int[] labels = new int[size];
+    int[] arity = new int[size];
+    for(int i=0; i<size; i++){ labels[i] = readVarInt(in); }
+    for(int i=0; i<size; i++){ arity[i] = readVarInt(in); }
+    int[] position = new int[]{ 0 };
+    Tree<String> tree = buildTree(labels, arity, strings, position);
+    if(position[0] != size){ throw new IllegalStateException("Could not decode tree: read " + position[0] + " of " + size + " nodes"); }
+    return tree;
+  }
+
+  private static Tree<String> buildTree(int[] labels, int[] arity, String[] strings, int[] position){
+    int node = position[0];
+    position[0] += 1;
+    if(arity[node] == 0){
+      return new Tree<String>(strings[labels[node]]);
+    }
+    ArrayList<Tree<String>> children = new ArrayList<Tree<String>>(arity[node]);
+    for(int i=0; i<arity[node]; i++){
+      children.add(buildTree(labels, arity, strings, position));
+    }
+    return new Tree<String>(strings[labels[node]], children);
+  }
+
+  private static List<Mention> readMentions(ByteBuffer in, String[] strings, Document doc){
+    int count = readVarInt(in);
+    List<Mention> mentions = new ArrayList<Mention>(count);
+    for(int i=0; i<count; i++){
+      Sentence sentence = doc.sentences.get(readVarInt(in));
+      int begin = readVarInt(in);
+      int end = readVarInt(in);
+      int head = readVarInt(in);
+      Tree<String> parse = readTree(in, strings);
+      mentions.add(new Mention(doc, sentence, begin, end, parse, head));
+    }
+    return mentions;
+  }
+
+  /**
+   * Decode a datum from the binary format, starting at the buffer's current position.
+   * The position of the buffer is advanced to the end of the datum.
+   * @param in The buffer to read from
+   * @return The decoded datum, equivalent to what SerializedDatum.decode() would produce
+   */
+  public static SerializedDatum decode(ByteBuffer in){
+    //--Header
+    if(readVarInt(in) != MAGIC){ throw new IllegalStateException("Could not deserialize: bad magic number"); }
+    String id = readString(in);
+    String[] strings = new String[readVarInt(in)];
+    for(int i=0; i<strings.length; i++){ strings[i] = readString(in); }
+    //(the ids of the strings in the corpus-wide symbol table, whose copies are shared by every document)
+    int[] symbols = new int[strings.length];
+    for(int i=0; i<strings.length; i++){
+      symbols[i] = SymbolTable.id(strings[i]);
+      strings[i] = SymbolTable.symbol(symbols[i]);
+    }
+    //--Sentences
+    int numSentences = readVarInt(in);
+    List<Sentence> sentences = new ArrayList<Sentence>(numSentences);
+    for(int s=0; s<numSentences; s++){
+      int length = readVarInt(in);
+      int[] words = readColumn(in, symbols, length);
+      int[] lemmas = readColumn(in, symbols, length);
+      int[] posTags = readColumn(in, symbols, length);
+      int[] nerTags = readColumn(in, symbols, length);
+      int[] speakers = readColumn(in, symbols, length);
+      Tree<String> parse = readTree(in, strings);
+      sentences.add(new Sentence(words, lemmas, posTags, nerTags, speakers, parse));
+    }
+    Document doc = new Document(id, sentences);
+    //--Mentions
+    List<Mention> goldMentions = readMentions(in, strings, doc);
+    List<Mention> predictedMentions = readMentions(in, strings, doc);
+    //--Gold Clusters
+    int numClusters = readVarInt(in);
+    List<Entity> goldClusters = new ArrayList<Entity>(numClusters);
+    for(int c=0; c<numClusters; c++){
+      int size = readVarInt(in);
+      List<Mention> mentions = new ArrayList<Mention>(size);
+      for(int i=0; i<size; i++){ mentions.add(goldMentions.get(readVarInt(in))); }
+      goldClusters.add(new Entity(goldMentions, mentions));
+    }
+    //--Return
+    return new SerializedDatum(doc, goldMentions, predictedMentions, goldClusters);
+  }
+
+  /**
+   * Read a binary datum from a file.
+   * @param file The .bin file to read
+   * @return The decoded datum
+   * @throws IOException If the file could not be read
+   */
+  public static SerializedDatum read(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      byte[] contents = new byte[(int) file.length()];
+      in.readFully(contents);
+      return decode(ByteBuffer.wrap(contents));
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Find the binary version of a plaintext .dat file
+   * @param plaintext The plaintext file
+   * @return The path the binary version of the file would be stored at (it may not exist)
+   */
+  public static File binaryFile(File plaintext){
+    String path = plaintext.getPath();
+    if(path.endsWith(".dat")){ path = path.substring(0, path.length() - ".dat".length()); }
+    return new File(path + EXTENSION);
+  }
+
+  //--------------
+  // CONVERSION
+  //--------------
+  /**
+   * A canonical String form of a datum, which does not depend on hash codes or
+   * entity ids, used to check that a conversion was lossless.
+   */
+  private static String canonicalForm(SerializedDatum datum){
+    StringBuilder b = new StringBuilder();
+    b.append(datum.document.encode()).append("\n");
+    for(Mention m : datum.goldMentions){ b.append(m.encode()).append("\n"); }
+    b.append("--\n");
+    for(Mention m : datum.predictedMentions){ b.append(m.encode()).append("\n"); }
+    b.append("--\n");
+    Map<Mention,Integer> mentionIndices = new HashMap<Mention,Integer>();
+    for(int i=0; i<datum.goldMentions.size(); i++){ mentionIndices.put(datum.goldMentions.get(i), i); }
+    for(Entity e : datum.goldClusters){
+      List<Integer> indices = new ArrayList<Integer>();
+      for(Mention m : e.mentions){ indices.add(mentionIndices.get(m)); }
+      Collections.sort(indices);
+      b.append(indices).append("\n");
+    }
+    return b.toString();
+  }
+
+  /**
+   * Convert a plaintext datum into a binary datum, checking that the conversion
+   * decodes to the same document.
+   * @param plaintext The .dat file to read
+   * @param binary The .bin file to write
+   * @throws IOException If a file could not be read or written
+   */
+  public static void convert(File plaintext, File binary) throws IOException {
+    //(read)
+    SerializedDatum datum = SerializedDatum.decode(IOUtils.slurpFile(plaintext));
+    byte[] encoded = encode(datum);
+    //(error check)
+    if(!canonicalForm(decode(ByteBuffer.wrap(encoded))).equals(canonicalForm(datum))){
+      throw new IllegalStateException("Did not encode datum properly: " + plaintext);
+    }
+    //(write)
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(binary));
+    try {
+      out.write(encoded);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Convert every .dat file in the data directory into a .bin file
+   * @param args -path [data path]
+   */
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    String dataPath = props.getProperty("path", CoreferenceTester.dataPath);
+    for(DataType type : DataType.values()){
+      File dir = new File(dataPath + "/" + CoreferenceTester.conllData(type));
+      if(!dir.isDirectory()){
+        System.out.println("Skipping " + type + " (no such directory: " + dir + ")");
+        continue;
+      }
+      System.out.print("Converting " + type + "...");
+      int count = 0;
+      long plaintextBytes = 0;
+      long binaryBytes = 0;
+      for(File plaintext : IOUtils.iterFilesRecursive(dir, ".dat")){
+        File binary = binaryFile(plaintext);
+        convert(plaintext, binary);
+        count += 1;
+        plaintextBytes += plaintext.length();
+        binaryBytes += binary.length();
+      }
+      System.out.println("done [" + count + " documents; " + plaintextBytes + " bytes -> " + binaryBytes + " bytes]");
+    }
+  }
+}
@@ -0,0 +1,304 @@
+package cs224n.assignments;
+
+import cs224n.coref.Document;
+import cs224n.coref.Entity;
+import cs224n.coref.Mention;
+import cs224n.util.KuhnMunkres;
+
+import java.util.*;
+
+/**
+ * The overlap between the gold (key) clusters and the guessed (response) clusters
+ * of one document: the size of every cluster, and the number of mentions shared by
+ * every pair of a key and a response cluster which overlap.
+ *
+ * Mentions are given dense integer ids when the table is built (the document's
+ * mentions first, in order, then any other mention of a cluster), so the table is
+ * built with a single hash lookup per mention. The numerators and denominators of
+ * the MUC and B^3 scores of the document are computed from it at the same time;
+ * see {@link CoreferenceTester.CoreferenceScore} for how they are combined. The
+ * statistics of the CEAF and BLANC metrics are computed from the table on request.
+ */
+public class ContingencyTable {
+  /** The number of mentions in the document's mention list */
+  public final int numMentions;
+  /** The number of mentions in each key cluster */
+  public final int[] keySizes;
+  /** The number of mentions in each response cluster */
+  public final int[] responseSizes;
+  /** The key cluster of each non-empty cell */
+  public final int[] cellKey;
+  /** The response cluster of each non-empty cell */
+  public final int[] cellResponse;
+  /** The number of mentions in both the key and the response cluster of each non-empty cell */
+  public final int[] cellCount;
+
+  /** MUC: the links of the response clusters found in the key (precision numerator) */
+  public final int mucPrecisionNumerator;
+  /** MUC: the links of the response clusters (precision denominator) */
+  public final int mucPrecisionDenominator;
+  /** MUC: the links of the key clusters found in the response (recall numerator) */
+  public final int mucRecallNumerator;
+  /** MUC: the links of the key clusters (recall denominator) */
+  public final int mucRecallDenominator;
+  /** B^3: the sum over the document's mentions of the precision of the mention's response cluster */
+  public final double b3PrecisionNumerator;
+  /** B^3: the number of mentions in the document, or 0 if no mention has a response cluster */
+  public final double b3PrecisionDenominator;
+  /** B^3: the sum over the document's mentions of the recall of the mention's key cluster */
+  public final double b3RecallNumerator;
+  /** B^3: the number of mentions in the document, or 0 if no mention has a key cluster */
+  public final double b3RecallDenominator;
+
+  /**
+   * Build the table for a document
+   * @param doc The document, whose mention list gives the mentions scored by B^3
+   * @param responses The system's guessed clusters for the document
+   * @param keys The true clusters for the document
+   */
+  public ContingencyTable(Document doc, Collection<Entity> responses, Collection<Entity> keys){
+    //--Mention Ids
+    List<Mention> mentions = doc.getMentions();
+    this.numMentions = mentions.size();
+    Map<Mention,Integer> ids = new HashMap<Mention,Integer>();
+    List<Mention> byId = new ArrayList<Mention>(mentions);
+    for(Mention m : mentions){ ids.put(m, ids.size()); }
+    List<int[]> keyMembers = members(keys, ids, byId);
+    List<int[]> responseMembers = members(responses, ids, byId);
+    int numIds = ids.size();
+    //--Cluster Of Each Mention
+    this.keySizes = new int[keyMembers.size()];
+    this.responseSizes = new int[responseMembers.size()];
+    int[] keyOf = clusterOf(keyMembers, keySizes, byId);
+    int[] responseOf = clusterOf(responseMembers, responseSizes, byId);
+    //--Cells
+    //(count the overlap of each response cluster with each key cluster)
+    int[] counts = new int[keySizes.length];
+    int[] touched = new int[keySizes.length];
+    int[] overlap = new int[numIds];
+    int[] keyPartitions = new int[keySizes.length];
+    int[] keyMatched = new int[keySizes.length];
+    List<int[]> cells = new ArrayList<int[]>();
+    int mucPrecisionNumerator = 0;
+    int mucPrecisionDenominator = 0;
+    for(int r=0; r<responseMembers.size(); r++){
+      int numTouched = 0;
+      int matched = 0;
+      for(int id : responseMembers.get(r)){
+        int k = keyOf[id];
+        if(k < 0){ continue; }
+        if(counts[k] == 0){ touched[numTouched++] = k; }
+        counts[k] += 1;
+        matched += 1;
+      }
+      for(int id : responseMembers.get(r)){
+        if(keyOf[id] >= 0){ overlap[id] = counts[keyOf[id]]; }
+      }
+      for(int i=0; i<numTouched; i++){
+        int k = touched[i];
+        cells.add(new int[]{k, r, counts[k]});
+        keyPartitions[k] += 1;
+        keyMatched[k] += counts[k];
+        counts[k] = 0;
+      }
+      //(MUC precision: a response cluster is split into one partition per key cluster
+      // it overlaps, and one per mention which is in no key cluster)
+      int partitions = numTouched + (responseSizes[r] - matched);
+      mucPrecisionNumerator += responseSizes[r] - partitions;
+      mucPrecisionDenominator += responseSizes[r] - 1;
+    }
+    this.cellKey = new int[cells.size()];
+    this.cellResponse = new int[cells.size()];
+    this.cellCount = new int[cells.size()];
+    for(int i=0; i<cells.size(); i++){
+      cellKey[i] = cells.get(i)[0];
+      cellResponse[i] = cells.get(i)[1];
+      cellCount[i] = cells.get(i)[2];
+    }
+    //--MUC Recall
+    int mucRecallNumerator = 0;
+    int mucRecallDenominator = 0;
+    for(int k=0; k<keySizes.length; k++){
+      int partitions = keyPartitions[k] + (keySizes[k] - keyMatched[k]);
+      mucRecallNumerator += keySizes[k] - partitions;
+      mucRecallDenominator += keySizes[k] - 1;
+    }
+    this.mucPrecisionNumerator = mucPrecisionNumerator;
+    this.mucPrecisionDenominator = mucPrecisionDenominator;
+    this.mucRecallNumerator = mucRecallNumerator;
+    this.mucRecallDenominator = mucRecallDenominator;
+    //--B^3
+    double b3PrecisionNumerator = 0.0;
+    double b3RecallNumerator = 0.0;
+    for(int id=0; id<numMentions; id++){
+      if(responseOf[id] >= 0){ b3PrecisionNumerator += ((double) overlap[id]) / ((double) responseSizes[responseOf[id]]); }
+      if(keyOf[id] >= 0){ b3RecallNumerator += ((double) overlap[id]) / ((double) keySizes[keyOf[id]]); }
+    }
+    this.b3PrecisionNumerator = b3PrecisionNumerator;
+    this.b3PrecisionDenominator = sum(responseSizes) == 0 ? 0.0 : (double) numMentions;
+    this.b3RecallNumerator = b3RecallNumerator;
+    this.b3RecallDenominator = sum(keySizes) == 0 ? 0.0 : (double) numMentions;
+  }
+
+  /**
+   * CEAF: the total similarity of the best one-to-one alignment of key clusters
+   * to response clusters (Luo 2005, "On Coreference Resolution Performance Metrics").
+   * Clusters are only aligned within connected components of the overlap graph
+   * (clusters which share no mention add nothing to the alignment), so the
+   * assignment problems solved are as small as the clusters' overlaps allow.
+   * @param entityBased If true, the similarity of two clusters is 2|K&R|/(|K|+|R|)
+   *                    (CEAF-e); otherwise it is |K&R| (CEAF-m)
+   * @return The similarity of the optimal alignment
+   */
+  public double ceafSimilarity(boolean entityBased){
+    //--Connected Components
+    //(keys are nodes [0,K); responses are nodes [K,K+R))
+    int numKeys = keySizes.length;
+    int[] component = new int[numKeys + responseSizes.length];
+    for(int i=0; i<component.length; i++){ component[i] = i; }
+    for(int c=0; c<cellCount.length; c++){
+      int a = root(component, cellKey[c]);
+      int b = root(component, numKeys + cellResponse[c]);
+      if(a != b){ component[a] = b; }
+    }
+    Map<Integer,List<Integer>> cellsOfComponent = new HashMap<Integer,List<Integer>>();
+    for(int c=0; c<cellCount.length; c++){
+      int root = root(component, cellKey[c]);
+      List<Integer> cells = cellsOfComponent.get(root);
+      if(cells == null){
+        cells = new ArrayList<Integer>();
+        cellsOfComponent.put(root, cells);
+      }
+      cells.add(c);
+    }
+    //--Align Each Component
+    double rtn = 0.0;
+    int[] row = new int[numKeys];
+    int[] col = new int[responseSizes.length];
+    for(List<Integer> cells : cellsOfComponent.values()){
+      //(number the component's clusters)
+      int numRows = 0;
+      int numCols = 0;
+      Arrays.fill(row, -1);
+      Arrays.fill(col, -1);
+      for(int c : cells){
+        if(row[cellKey[c]] < 0){ row[cellKey[c]] = numRows++; }
+        if(col[cellResponse[c]] < 0){ col[cellResponse[c]] = numCols++; }
+      }
+      //(weights)
+      double[][] weights = new double[numRows][numCols];
+      for(int c : cells){
+        double similarity = entityBased
+            ? 2.0 * cellCount[c] / (keySizes[cellKey[c]] + responseSizes[cellResponse[c]])
+            : (double) cellCount[c];
+        weights[row[cellKey[c]]][col[cellResponse[c]]] = similarity;
+      }
+      //(solve)
+      if(numRows == 1 && numCols == 1){
+        rtn += weights[0][0];
+      } else {
+        rtn += KuhnMunkres.weight(weights, KuhnMunkres.maximize(weights));
+      }
+    }
+    return rtn;
+  }
+
+  private static int root(int[] parent, int i){
+    while(parent[i] != i){
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /** The number of mentions in the key clusters */
+  public int keyMentions(){ return sum(keySizes); }
+  /** The number of mentions in the response clusters */
+  public int responseMentions(){ return sum(responseSizes); }
+
+  private static long pairs(long n){ return n * (n - 1) / 2; }
+
+  /** BLANC: the number of pairs of mentions in the same key cluster */
+  public long keyCoreferenceLinks(){
+    long rtn = 0;
+    for(int size : keySizes){ rtn += pairs(size); }
+    return rtn;
+  }
+  /** BLANC: the number of pairs of mentions in the same response cluster */
+  public long responseCoreferenceLinks(){
+    long rtn = 0;
+    for(int size : responseSizes){ rtn += pairs(size); }
+    return rtn;
+  }
+  /** BLANC: the number of pairs of mentions in the same key cluster and the same response cluster */
+  public long commonCoreferenceLinks(){
+    long rtn = 0;
+    for(int count : cellCount){ rtn += pairs(count); }
+    return rtn;
+  }
+  /** BLANC: the number of pairs of key mentions in different key clusters */
+  public long keyNonCoreferenceLinks(){
+    return pairs(keyMentions()) - keyCoreferenceLinks();
+  }
+  /** BLANC: the number of pairs of response mentions in different response clusters */
+  public long responseNonCoreferenceLinks(){
+    return pairs(responseMentions()) - responseCoreferenceLinks();
+  }
+  /**
+   * BLANC: the number of pairs of mentions, each in both a key and a response cluster,
+   * which are in different key clusters and in different response clusters
+   */
+  public long commonNonCoreferenceLinks(){
+    long[] inKey = new long[keySizes.length];
+    long[] inResponse = new long[responseSizes.length];
+    long both = 0;
+    for(int c=0; c<cellCount.length; c++){
+      inKey[cellKey[c]] += cellCount[c];
+      inResponse[cellResponse[c]] += cellCount[c];
+      both += cellCount[c];
+    }
+    //(all pairs, less those sharing a key cluster or a response cluster)
+    long rtn = pairs(both) + commonCoreferenceLinks();
+    for(long n : inKey){ rtn -= pairs(n); }
+    for(long n : inResponse){ rtn -= pairs(n); }
+    return rtn;
+  }
+
+  private static List<int[]> members(Collection<Entity> clusters, Map<Mention,Integer> ids, List<Mention> byId){
+    List<int[]> rtn = new ArrayList<int[]>(clusters.size());
+    for(Entity cluster : clusters){
+      int[] members = new int[cluster.mentions.size()];
+      int i = 0;
+      for(Mention m : cluster.mentions){
+        Integer id = ids.get(m);
+        if(id == null){
+          id = ids.size();
+          ids.put(m, id);
+          byId.add(m);
+        }
+        members[i++] = id;
+      }
+      rtn.add(members);
+    }
+    return rtn;
+  }
+
+  private static int[] clusterOf(List<int[]> members, int[] sizes, List<Mention> byId){
+    int[] clusterOf = new int[byId.size()];
+    Arrays.fill(clusterOf, -1);
+    for(int c=0; c<members.size(); c++){
+      sizes[c] = members.get(c).length;
+      for(int id : members.get(c)){
+        if(clusterOf[id] >= 0){ throw new IllegalStateException("Mention mapped to multiple entities (in gold! you're all sorts of broken...): " + byId.get(id)); }
+        clusterOf[id] = c;
+      }
+    }
+    return clusterOf;
+  }
+
+  private static int sum(int[] values){
+    int rtn = 0;
+    for(int v : values){ rtn += v; }
+    return rtn;
+  }
+}
@@ -4,6 +4,8 @@ import cs224n.coref.ClusteredMention;
 import cs224n.coref.Document;
 import cs224n.coref.Entity;
 import cs224n.coref.Mention;
+import cs224n.coref.Name;
+import cs224n.coref.Sentence;
 import cs224n.corefsystems.BaselineCoreferenceSystem;
 import cs224n.corefsystems.CoreferenceSystem;
 import cs224n.util.*;
@@ -13,6 +15,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 import java.util.PriorityQueue;
+import java.util.concurrent.*;
 
 /**
  * The framework for running your coreference system.
@@ -129,52 +132,310 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 		}
 	}
 
+	/**
+	 * An indexed collection of documents, such as a data split.
+	 * Unless the corpus is a {@link CachedCorpus}, every call to get() decodes a fresh
+	 * copy of the document.
+	 */
+	public static interface Corpus extends WeakReferenceList.RefreshFunction<SerializedDatum> { }
+
+	/**
+	 * A corpus which decodes each document once, and hands out the same decoded copy
+	 * to the training, test and debug passes for as long as it stays in the cache.
+	 * Whoever runs coreference on a document from this corpus must first clear the
+	 * decisions of the previous run with {@link Document#resetCoreference()}.
+	 */
+	static class CachedCorpus implements Corpus {
+		private final Corpus source;
+		private final List<SerializedDatum> cache;
+		public CachedCorpus(Corpus source, List<SerializedDatum> cache){
+			this.source = source;
+			this.cache = cache;
+		}
+		public SerializedDatum get(int i) { return cache.get(i); }
+		public int size() { return source.size(); }
+		/** Stop any background prefetching, and summarize the cache's performance */
+		public String shutdown(){
+			if(cache instanceof BoundedCacheList){
+				BoundedCacheList<SerializedDatum> bounded = (BoundedCacheList<SerializedDatum>) cache;
+				bounded.shutdown();
+				return bounded.cacheStatistics();
+			}
+			return "(weak references)";
+		}
+	}
+
+	/**
+	 * A corpus backed by one serialized file per document.
+	 */
+	static class FileCorpus implements Corpus {
+		private final File[] files;
+		public FileCorpus(File[] files){ this.files = files; }
+		public SerializedDatum get(int i) { return getDatum(files[i]); }
+		public int size() { return files.length; }
+	}
+
+	/**
+	 * The scores of a system over a set of documents, under each of a set of metrics
+	 * (MUC and B^3 by default; CEAF and BLANC on request).
+	 * Each document entered is summarized as a {@link ContingencyTable}, whose
+	 * statistics for each metric are added to running sums; neither the table nor
+	 * the document's clusters are kept, so the memory used does not grow with the
+	 * number of documents scored. Optionally, the statistics of each document are
+	 * kept as well (a handful of numbers per document), so that the scores can be
+	 * resampled over documents; see {@link PairedBootstrap}.
+	 */
 	public static class CoreferenceScore {
-		private Collection<Entity> responses = new ArrayList<Entity>();
-		private Collection<Entity> keys = new ArrayList<Entity>();
+		/**
+		 * A coreference metric, scored from sums over documents of a fixed number of
+		 * statistics per document.
+		 */
+		public static enum Metric {
+			/** As per Vilain 1995: "A Model Theoretic Coreference Scoring Scheme" (http://acl.ldc.upenn.edu/M/M95/M95-1005.pdf) */
+			MUC("MUC", 4) {
+				void statistics(ContingencyTable doc, double[] stats, int offset){
+					stats[offset] = doc.mucPrecisionNumerator;
+					stats[offset+1] = doc.mucPrecisionDenominator;
+					stats[offset+2] = doc.mucRecallNumerator;
+					stats[offset+3] = doc.mucRecallDenominator;
+				}
+				double[] score(double[] sums, int offset){
+					return withF1(scoreMUC(sums[offset], sums[offset+1]), scoreMUC(sums[offset+2], sums[offset+3]));
+				}
+			},
+			/** Adapted from the JavaNLP code */
+			B3("B^3", 4) {
+				void statistics(ContingencyTable doc, double[] stats, int offset){
+					stats[offset] = doc.b3PrecisionNumerator;
+					stats[offset+1] = doc.b3PrecisionDenominator;
+					stats[offset+2] = doc.b3RecallNumerator;
+					stats[offset+3] = doc.b3RecallDenominator;
+				}
+				double[] score(double[] sums, int offset){
+					return withF1(scoreB3(sums[offset], sums[offset+1]), scoreB3(sums[offset+2], sums[offset+3]));
+				}
+			},
+			/** Mention-based CEAF (Luo 2005): the optimal alignment's shared mentions, over the mentions of the response / key */
+			CEAFM("CEAF-m", 3) {
+				void statistics(ContingencyTable doc, double[] stats, int offset){
+					stats[offset] = doc.ceafSimilarity(false);
+					stats[offset+1] = doc.responseMentions();
+					stats[offset+2] = doc.keyMentions();
+				}
+				double[] score(double[] sums, int offset){
+					return withF1OrZero(ratio(sums[offset], sums[offset+1]), ratio(sums[offset], sums[offset+2]));
+				}
+			},
+			/** Entity-based CEAF (Luo 2005): the optimal alignment's similarity, over the number of response / key entities */
+			CEAFE("CEAF-e", 3) {
+				void statistics(ContingencyTable doc, double[] stats, int offset){
+					stats[offset] = doc.ceafSimilarity(true);
+					stats[offset+1] = doc.responseSizes.length;
+					stats[offset+2] = doc.keySizes.length;
+				}
+				double[] score(double[] sums, int offset){
+					return withF1OrZero(ratio(sums[offset], sums[offset+1]), ratio(sums[offset], sums[offset+2]));
+				}
+			},
+			/**
+			 * BLANC (Recasens and Hovy 2011), extended to responses with mentions other than
+			 * the key's as in Luo et al. 2014: the average of the scores over coreference
+			 * links and over non-coreference links. If neither the key nor the response has
+			 * any link of one kind, only the other kind is scored.
+			 */
+			BLANC("BLANC", 6) {
+				void statistics(ContingencyTable doc, double[] stats, int offset){
+					stats[offset] = doc.commonCoreferenceLinks();
+					stats[offset+1] = doc.responseCoreferenceLinks();
+					stats[offset+2] = doc.keyCoreferenceLinks();
+					stats[offset+3] = doc.commonNonCoreferenceLinks();
+					stats[offset+4] = doc.responseNonCoreferenceLinks();
+					stats[offset+5] = doc.keyNonCoreferenceLinks();
+				}
+				double[] score(double[] sums, int offset){
+					double[] coref = withF1OrZero(ratio(sums[offset], sums[offset+1]), ratio(sums[offset], sums[offset+2]));
+					double[] noncoref = withF1OrZero(ratio(sums[offset+3], sums[offset+4]), ratio(sums[offset+3], sums[offset+5]));
+					boolean hasCoref = sums[offset+1] > 0 || sums[offset+2] > 0;
+					boolean hasNoncoref = sums[offset+4] > 0 || sums[offset+5] > 0;
+					if(!hasCoref && hasNoncoref){ return noncoref; }
+					if(hasCoref && !hasNoncoref){ return coref; }
+					return new double[]{ (coref[0] + noncoref[0]) / 2.0, (coref[1] + noncoref[1]) / 2.0, (coref[2] + noncoref[2]) / 2.0 };
+				}
+			};
+
+			/** The name of the metric, as printed */
+			public final String name;
+			/** The number of statistics summed per document */
+			final int size;
+			private Metric(String name, int size){
+				this.name = name;
+				this.size = size;
+			}
+			/** Compute the statistics of a document, into stats[offset, offset+size) */
+			abstract void statistics(ContingencyTable doc, double[] stats, int offset);
+			/** The precision, recall and F1 given the sums of the statistics in sums[offset, offset+size) */
+			abstract double[] score(double[] sums, int offset);
+
+			/**
+			 * Parse a comma separated list of metrics (e.g. "muc,b3,ceafe")
+			 * @param metrics The names of the metrics, as in the enum, in any case
+			 * @return The metrics
+			 */
+			public static EnumSet<Metric> parse(String metrics){
+				EnumSet<Metric> rtn = EnumSet.noneOf(Metric.class);
+				for(String metric : metrics.split(",")){
+					if(metric.trim().length() == 0){ continue; }
+					try {
+						rtn.add(Metric.valueOf(metric.trim().toUpperCase()));
+					} catch(IllegalArgumentException e) {
+						throw new IllegalArgumentException("Unknown metric: " + metric + " (options: " + Arrays.toString(Metric.values()).toLowerCase() + ")");
+					}
+				}
+				return rtn;
+			}
+		}
+
+		private final int progressInterval;
+		private final EnumSet<Metric> reported;
+		private final EnumSet<Metric> tracked;
+		private final int[] offsets = new int[Metric.values().length];
+		private final double[] sums;
+		private final List<double[]> documentStatistics;
+		private int documents = 0;
+
+		public CoreferenceScore(){ this(0, EnumSet.of(Metric.MUC, Metric.B3)); }
+
+		public CoreferenceScore(int progressInterval, EnumSet<Metric> metrics){ this(progressInterval, metrics, false); }
+
+		/**
+		 * Create a scorer
+		 * @param progressInterval Print the scores so far every this many documents (0 never prints)
+		 * @param metrics The metrics to report; MUC and B^3 are always computed
+		 * @param keepDocuments If true, keep the statistics of every document entered
+		 */
+		public CoreferenceScore(int progressInterval, EnumSet<Metric> metrics, boolean keepDocuments){
+			this.progressInterval = progressInterval;
+			this.documentStatistics = keepDocuments ? new ArrayList<double[]>() : null;
+			this.reported = EnumSet.copyOf(metrics);
+			this.tracked = EnumSet.copyOf(metrics);
+			this.tracked.add(Metric.MUC);
+			this.tracked.add(Metric.B3);
+			int size = 0;
+			for(Metric metric : tracked){
+				offsets[metric.ordinal()] = size;
+				size += metric.size;
+			}
+			this.sums = new double[size];
+		}
 
 
 		public void report(){
-			System.out.println("    MUC");
-			System.out.println("MUC Precision: " + precisionMUC());
-			System.out.println("MUC Recall:    " + recallMUC());
-			System.out.println("MUC F1:        " + f1MUC());
-			System.out.println("    B^3");
-			System.out.println("B^3 Precision: " + precisionB3());
-			System.out.println("B^3 Recall:    " + recallB3());
-			System.out.println("B^3 F1:        " + f1B3());
+			for(Metric metric : reported){
+				double[] score = score(metric);
+				System.out.println("    " + metric.name);
+				System.out.println(metric.name + " Precision: " + score[0]);
+				System.out.println(metric.name + " Recall:    " + score[1]);
+				System.out.println(metric.name + " F1:        " + score[2]);
+			}
+		}
+
+		/**
+		 * A one line summary of the scores of the documents entered so far
+		 * @return The number of documents, and the F1 score so far of each metric reported
+		 */
+		public synchronized String runningSummary(){
+			StringBuilder b = new StringBuilder();
+			b.append("[").append(documents).append(" documents]");
+			for(Metric metric : reported){
+				b.append(" ").append(metric.name).append(" F1: ");
+				try {
+					b.append(String.format("%.4f", score(metric)[2]));
+				} catch(IllegalStateException e) {
+					b.append("n/a");  // (e.g. B^3 before any document with mentions)
+				}
+			}
+			return b.toString();
+		}
+
+		/**
+		 * The number of documents entered so far
+		 */
+		public synchronized int numDocuments(){ return documents; }
+
+		/**
+		 * The score of the documents entered so far under a metric
+		 * @param metric The metric, which must have been given when this scorer was created
+		 *               (MUC and B^3 are always available)
+		 * @return The precision, recall and F1 score
+		 */
+		public synchronized double[] score(Metric metric){
+			return score(metric, sums);
 		}
 
-		public double precisionMUC(){
-			double prec = precisionMUC(responses,keys);
-			//      double check = recallMUC(keys, responses);
-			//      if(Math.abs(prec-check) > 1e-6){ throw new IllegalStateException("MUC scores do not agree (not your fault)!"); }
-			return prec;
+		/**
+		 * The score under a metric of some sums of document statistics
+		 * @param metric The metric, which must be computed by this scorer
+		 * @param sums Sums of vectors from documentStatistics()
+		 * @return The precision, recall and F1 score
+		 */
+		double[] score(Metric metric, double[] sums){
+			if(!tracked.contains(metric)){ throw new IllegalArgumentException("Metric not computed: " + metric); }
+			return metric.score(sums, offsets[metric.ordinal()]);
 		}
-		public double recallMUC(){
-			double recall = precisionMUC(keys,responses);
-			//      double check = recallMUC(responses, keys);
-			//      if(Math.abs(recall-check) > 1e-6){ throw new IllegalStateException("MUC scores do not agree (not your fault)!"); }
-			return recall;
+
+		/**
+		 * The metrics reported by this scorer
+		 */
+		public EnumSet<Metric> metrics(){ return EnumSet.copyOf(reported); }
+
+		/**
+		 * The statistics of each document entered so far, in the order they were entered.
+		 * Summing any subset of these and passing the sums to score(Metric, double[])
+		 * gives the score of that subset.
+		 * @return One vector of statistics per document; do not modify them
+		 */
+		synchronized List<double[]> documentStatistics(){
+			if(documentStatistics == null){ throw new IllegalStateException("Document statistics were not kept by this scorer"); }
+			return new ArrayList<double[]>(documentStatistics);
 		}
-		public double f1MUC(){
-			double prec = precisionMUC();
-			double rec = recallMUC();
-			return 2.0*(prec*rec)/(prec+rec);
+
+		private static double[] withF1(double prec, double rec){
+			return new double[]{ prec, rec, 2.0*(prec*rec)/(prec+rec) };
 		}
 
-		public double precisionB3(){
-			return precisionB3(responses,keys);
+		/** As withF1(), but with an F1 of 0 rather than NaN when both precision and recall are 0 */
+		private static double[] withF1OrZero(double prec, double rec){
+			return new double[]{ prec, rec, prec + rec == 0.0 ? 0.0 : 2.0*(prec*rec)/(prec+rec) };
 		}
-		public double recallB3(){
-			return precisionB3(keys,responses);
+
+		private static double ratio(double numer, double denom){
+			return denom == 0.0 ? 0.0 : numer / denom;
 		}
-		public double f1B3(){
-			double prec = precisionB3();
-			double rec = recallB3();
-			return 2.0*(prec*rec)/(prec+rec);
+
+		private static double scoreMUC(double numer, double denom){
+			if(numer > denom){ throw new IllegalStateException("MUC precision is broken (not your fault!)"); }
+			if(denom == 0){
+				if(numer != 0){ throw new IllegalStateException("MUC precisions is hella broken (not your fault!)"); }
+				return 1.0;
+			}
+			return numer / denom;
+		}
+
+		private static double scoreB3(double numer, double denom){
+			if(numer > denom || numer < 0 || denom <= 0){
+				throw new IllegalStateException("Bad B Cubed score about to be returned (not your fault)!");
+			}
+			return numer / denom;
 		}
 
+		public double precisionMUC(){ return score(Metric.MUC)[0]; }
+		public double recallMUC(){ return score(Metric.MUC)[1]; }
+		public double f1MUC(){ return score(Metric.MUC)[2]; }
+
+		public double precisionB3(){ return score(Metric.B3)[0]; }
+		public double recallB3(){ return score(Metric.B3)[1]; }
+		public double f1B3(){ return score(Metric.B3)[2]; }
+
 		/**
 		 * Adapted from CoreNLP MUCScorer recall() method.
 		 * This should agree with precisionMUC().
@@ -209,128 +470,27 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 		}
 
 		/**
-		 * Adapted from the JavaNLP code
-		 */
-		private static double precisionB3(Collection<Entity> guesses, Collection<Entity> golds){
-			//--Variables
-			//(gold map)
-			Map<Mention,Entity> goldMap = new HashMap<Mention,Entity>();
-			for(Entity goldEntity : golds){
-				for(Mention m : goldEntity.mentions){
-					goldMap.put(m,goldEntity);
-				}
-			}
-			//(guess map)
-			Map<Mention,Entity> guessMap = new HashMap<Mention,Entity>();
-			for(Entity guessEntity : guesses){
-				for(Mention m : guessEntity.mentions){
-					guessMap.put(m,guessEntity);
-				}
-			}
-			//(documents)
-			Set<Document> documents = new HashSet<Document>();
-			for(Entity e : guesses){
-				for(Mention m : e.mentions){
-					documents.add(m.doc);
-				}
-			}
-			//--Get Score
-			double numer = 0.0;
-			double denom = 0.0;
-			for(Document doc : documents){
-				double n = 0.0;
-				for(Mention m : doc.getMentions()){
-					//(variables)
-					double correct = 0.0;
-					double total = 0.0;
-					//(calculate something)
-					Entity guessEntity = guessMap.get(m);
-					if(guessEntity != null){
-						for(Mention guessMention : guessEntity.mentions){
-							if(goldMap.containsKey(guessMention) && goldMap.get(guessMention).equals(goldMap.get(m))){
-								correct += 1;
-							}
-							total += 1;
-						}
-					}
-					//(increment score)
-					if(total > 0){
-						n += correct / total;
-					} else if(correct != 0){
-						throw new IllegalStateException("Bad B Cubed score update (not your fault)!");
-					}
-				}
-				numer += n;
-				denom += (double) doc.getMentions().size();
-			}
-			//--Return Score
-			if(numer > denom || numer < 0 || denom <= 0){
-				throw new IllegalStateException("Bad B Cubed score about to be returned (not your fault)!");
-			}
-			return numer / denom;
-		}
-
-		/**
-		 * As per Vilain 1995: "A Model Theoretic Coreference Scoring Scheme" (http://acl.ldc.upenn.edu/M/M95/M95-1005.pdf)
-		 * @param responses The system's guessed clusters
-		 * @param keys The true clusters
-		 * @return A precision (between 0 and 1) score
+		 * Score a document
+		 * @param doc The document, with the mentions coreference was run on
+		 * @param guess The system's clustering of the mentions
+		 * @param gold The true clusters of the document
+		 * @return This scorer
 		 */
-		private static double precisionMUC(Collection<Entity> responses, Collection<Entity> keys){
-			//--Auxilliary Structures
-			//(populate key map)
-			Map<Mention,Entity> keyMap = new HashMap<Mention,Entity>();
-			for(Entity gold : keys){
-				for(Mention mention : gold.mentions){
-					if(keyMap.containsKey(mention)){ throw new IllegalStateException("Mention mapped to multiple entities (in gold! you're all sorts of broken...): " + mention); }
-					keyMap.put(mention, gold);
-				}
+		public CoreferenceScore enter(Document doc, Collection<ClusteredMention> guess, Collection<Entity> gold){
+			//(compute the document's statistics outside the lock)
+			ContingencyTable table = new ContingencyTable(doc, Entity.fromMentions(guess), gold);
+			double[] stats = new double[sums.length];
+			for(Metric metric : tracked){
+				metric.statistics(table, stats, offsets[metric.ordinal()]);
 			}
-			//--Calculate Numerator
-			int numer = 0;
-			for(Entity response : responses){
-				//(get partitions)
-				Set<Entity> partitions = new HashSet<Entity>();
-				int extraPartitions = 0;
-				for(Mention m : response) {
-					if(!keyMap.containsKey(m)){
-						//(case: a mention that didn't exist in the gold)
-						extraPartitions += 1;
-					} else {
-						//(case: a mention that appeared in the gold)
-						partitions.add(keyMap.get(m));
-					}
-				}
-				//(debug)
-				int numAccountedFor = 0;
-				for(Entity e : partitions) {
-					numAccountedFor += e.size();
+			synchronized(this){
+				documents += 1;
+				for(int i=0; i<sums.length; i++){ sums[i] += stats[i]; }
+				if(documentStatistics != null){ documentStatistics.add(stats); }
+				if(progressInterval > 0 && documents % progressInterval == 0){
+					System.out.println(runningSummary());
 				}
-				//(increment numerator)
-				int p = partitions.size() + extraPartitions;
-				int S = response.size();
-				numer += S - p;
-			}
-			//--Calculate Denominator
-			int denom = 0;
-			for(Entity response : responses){
-				//(increment denominator)
-				int S = response.size();
-				denom += S-1;
-			}
-			//--Error Checks
-			if(numer > denom){ throw new IllegalStateException("MUC precision is broken (not your fault!)"); }
-			if(denom == 0){
-				if(numer != 0){ throw new IllegalStateException("MUC precisions is hella broken (not your fault!)"); }
-				return 1.0;
 			}
-			//--Return
-			return ((double) numer) / ((double) denom);
-		}
-
-		public CoreferenceScore enter(Document doc, Collection<ClusteredMention> guess, Collection<Entity> gold){
-			responses.addAll(Entity.fromMentions(guess));
-			keys.addAll(gold);
 			return this;
 		}
 	}
@@ -361,26 +521,16 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 		this.system = system;
 	}
 
-	public CoreferenceScore train(final File[] data, final Properties props){
+	public CoreferenceScore train(final Corpus data, final Properties props){
 		//--Create Data
 		//(get properties)
 		final String mentionType = props.getProperty("mentionExtractor", "gold");
 		//(convert data)
-		Collection<Pair<Document, List<Entity>>> dataToPass = new WeakReferenceList<Pair<Document,List<Entity>>>(new WeakReferenceList.RefreshFunction<Pair<Document,List<Entity>>>(){
+		final WeakReferenceList.RefreshFunction<Pair<Document,List<Entity>>> refresh = new WeakReferenceList.RefreshFunction<Pair<Document,List<Entity>>>(){
 			public Pair<Document,List<Entity>> get(int i) {
-				File f = data[i];
-				SerializedDatum datum = getDatum(f);
-				//((get mentions))
-				List<Mention> mentions = null;
-				if(mentionType.equalsIgnoreCase("gold")){
-					mentions = datum.goldMentions;
-				} else if(mentionType.equalsIgnoreCase("predicted")) {
-					mentions = datum.predictedMentions;
-				} else {
-					throw new IllegalArgumentException("Unknown mention extractor: " + mentionType);
-				}
+				SerializedDatum datum = data.get(i);
 				//((set mentions))
-				datum.document.setMentions(mentions);
+				selectMentions(datum, mentionType);
 				//((sanity checks))
 				for(Entity e : datum.goldClusters){
 					if(e.size() == 0){ throw new IllegalStateException("Gold cluster has size 0 (not your fault)!"); }
@@ -389,58 +539,240 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 				return Pair.make(datum.document, datum.goldClusters);
 			}
 			public int size() {
-				return data.length;
+				return data.size();
 			}
-		});
+		};
+		List<Pair<Document, List<Entity>>> documents = data instanceof CachedCorpus
+				? new AbstractList<Pair<Document,List<Entity>>>(){
+						//(case: the corpus holds on to decoded documents already)
+						public Pair<Document,List<Entity>> get(int i) { return refresh.get(i); }
+						public int size() { return refresh.size(); }
+					}
+				: new WeakReferenceList<Pair<Document,List<Entity>>>(refresh);
+		Collection<Pair<Document, List<Entity>>> dataToPass = documents;
+		int readAhead = Integer.parseInt(props.getProperty("readAhead", "0"));
+		if(readAhead > 0){
+			dataToPass = new ReadAheadList<Pair<Document,List<Entity>>>(documents, readAhead, readAheadThreads(props));
+		}
 		//--Train
 		system.train(dataToPass);
+		if(dataToPass instanceof ReadAheadList){
+			System.out.println("Training read-ahead: " + ((ReadAheadList<Pair<Document,List<Entity>>>) dataToPass).statistics());
+		}
 		//--Return
 		return test(data,props);
 	}
 
-	public CoreferenceScore test(File[] data, Properties props){
+	/**
+	 * Select which mentions of a document coreference is run on.
+	 * @param datum The document
+	 * @param mentionType One of "gold" or "predicted"
+	 * @return The document, with its mentions set
+	 */
+	private static Document selectMentions(SerializedDatum datum, String mentionType){
+		List<Mention> mentions = null;
+		if(mentionType.equalsIgnoreCase("gold")){
+			mentions = datum.goldMentions;
+		} else if(mentionType.equalsIgnoreCase("predicted")) {
+			mentions = datum.predictedMentions;
+		} else {
+			throw new IllegalArgumentException("Unknown mention extractor: " + mentionType);
+		}
+		return datum.document.setMentions(mentions);
+	}
+
+	/**
+	 * Keep the decoded documents of a corpus in a cache shared by every pass over it,
+	 * as configured by the -cache, -cacheSize, -cacheMB and -prefetch flags.
+	 * The cache is one of "weak" (documents are re-read whenever they are garbage collected),
+	 * "soft" (the default; documents are kept until memory runs low or the cache is full),
+	 * "lru" (documents are kept until the cache is full) or "none" (every pass decodes
+	 * every document again).
+	 */
+	private static Corpus documentCache(final Corpus data, Properties props){
+		//(get properties)
+		String type = props.getProperty("cache", "soft");
+		int maxEntries = Integer.parseInt(props.getProperty("cacheSize", "0"));
+		long maxBytes = Long.parseLong(props.getProperty("cacheMB", "0")) * 1024L * 1024L;
+		int prefetch = Integer.parseInt(props.getProperty("prefetch", "0"));
+		//(create cache)
+		if(type.equalsIgnoreCase("none")){
+			return data;
+		} else if(type.equalsIgnoreCase("weak")){
+			return new CachedCorpus(data, new WeakReferenceList<SerializedDatum>(data));
+		} else if(type.equalsIgnoreCase("soft") || type.equalsIgnoreCase("lru")){
+			BoundedCacheList.Eviction eviction = type.equalsIgnoreCase("soft") ? BoundedCacheList.Eviction.SOFT : BoundedCacheList.Eviction.LRU;
+			return new CachedCorpus(data, new BoundedCacheList<SerializedDatum>(data, eviction, maxEntries, maxBytes, DOCUMENT_SIZE, prefetch));
+		} else {
+			throw new IllegalArgumentException("Unknown cache type: " + type);
+		}
+	}
+
+	/**
+	 * A rough estimate of the heap used by a decoded document: its tokens (with their
+	 * annotations and parse tree nodes) and its mentions (with their parse fragments)
+	 */
+	private static final BoundedCacheList.SizeEstimator<SerializedDatum> DOCUMENT_SIZE = new BoundedCacheList.SizeEstimator<SerializedDatum>(){
+		public long estimateBytes(SerializedDatum datum) {
+			long tokens = 0;
+			for(Sentence s : datum.document.sentences){ tokens += s.length(); }
+			return 512L * tokens + 1024L * (datum.goldMentions.size() + datum.predictedMentions.size());
+		}
+	};
+
+	public CoreferenceScore test(final Corpus data, Properties props){
 		//--Variables
 		//(get properties)
-		String mentionType = props.getProperty("mentionExtractor", "gold");
+		final String mentionType = props.getProperty("mentionExtractor", "gold");
+		int numThreads = Integer.parseInt(props.getProperty("threads", "1"));
+		if(numThreads <= 0){ throw new IllegalArgumentException("Invalid number of threads: " + numThreads); }
+		if(system instanceof CoreferenceSystem.NotThreadSafe){ numThreads = 1; }
 		//(scorer)
-		CoreferenceScore score = new CoreferenceScore();
+		CoreferenceScore score = new CoreferenceScore(Integer.parseInt(props.getProperty("progress", "0")),
+				CoreferenceScore.Metric.parse(props.getProperty("metrics", "muc,b3")),
+				props.containsKey("compare"));  // (keep document statistics for the paired bootstrap)
 		//--Run Coreference
-		for(File f : data){
-			SerializedDatum datum = getDatum(f);
-			Document doc = datum.document;
-			//(get mentions)
-			List<Mention> mentions = null;
-			if(mentionType.equalsIgnoreCase("gold")){
-				mentions = datum.goldMentions;
-			} else if(mentionType.equalsIgnoreCase("predicted")) {
-				mentions = datum.predictedMentions;
-			} else {
-				throw new IllegalArgumentException("Unknown mention extractor: " + mentionType);
+		int readAhead = Integer.parseInt(props.getProperty("readAhead", "0"));
+		if((numThreads == 1 || data.size() <= 1) && readAhead > 0){
+			//(case: single threaded, documents decoded in the background)
+			ReadAheadIterator<SerializedDatum> iter = new ReadAheadIterator<SerializedDatum>(data, readAhead, readAheadThreads(props));
+			try {
+				while(iter.hasNext()){
+					SerializedDatum datum = iter.next();
+					Collection<ClusteredMention> guess = runDocument(datum, mentionType);
+					score.enter(datum.document, guess, datum.goldClusters);
+				}
+			} finally {
+				iter.close();
 			}
-			//(set mentions)
-			datum.document.setMentions(mentions);
-			//(run coreference)
-			Collection<ClusteredMention> guess = system.runCoreference(datum.document);
-			HashSet<ClusteredMention> uniqueCheck = new HashSet<ClusteredMention>();
-			for(ClusteredMention m : guess){ uniqueCheck.add(m); }
-			if(uniqueCheck.size() != guess.size()){
-				throw new IllegalStateException("You added the same mention to the return list twice");
+			System.out.println("Test read-ahead: " + iter.statistics());
+		} else if(numThreads == 1 || data.size() <= 1){
+			//(case: single threaded)
+			for(int i=0; i<data.size(); i++){
+				Pair<SerializedDatum,Collection<ClusteredMention>> result = runDocument(data, i, mentionType);
+				score.enter(result.getFirst().document, result.getSecond(), result.getFirst().goldClusters);
 			}
-			if(guess.size() != datum.document.getMentions().size()){
-				throw new IllegalStateException("You did not assign every entity to a cluster (returned a different sized list)");
+		} else if(readAhead > 0){
+			//(case: multithreaded, documents decoded in the background)
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, data.size()));
+			ReadAheadIterator<SerializedDatum> iter = new ReadAheadIterator<SerializedDatum>(data, readAhead, readAheadThreads(props));
+			try {
+				//((queue decoded documents, scoring the oldest once numThreads are waiting to be scored))
+				LinkedList<Future<Pair<SerializedDatum,Collection<ClusteredMention>>>> results
+						= new LinkedList<Future<Pair<SerializedDatum,Collection<ClusteredMention>>>>();
+				while(iter.hasNext()){
+					final SerializedDatum datum = iter.next();
+					results.addLast(pool.submit(new Callable<Pair<SerializedDatum,Collection<ClusteredMention>>>(){
+						public Pair<SerializedDatum,Collection<ClusteredMention>> call() {
+							return Pair.make(datum, runDocument(datum, mentionType));
+						}
+					}));
+					if(results.size() > numThreads){
+						Pair<SerializedDatum,Collection<ClusteredMention>> result = results.removeFirst().get();
+						score.enter(result.getFirst().document, result.getSecond(), result.getFirst().goldClusters);
+					}
+				}
+				//((score the rest, in document order))
+				while(!results.isEmpty()){
+					Pair<SerializedDatum,Collection<ClusteredMention>> result = results.removeFirst().get();
+					score.enter(result.getFirst().document, result.getSecond(), result.getFirst().goldClusters);
+				}
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+				throw new RuntimeException(e.getCause());
+			} finally {
+				pool.shutdownNow();
+				iter.close();
 			}
-			if(!datum.document.areAllMentionsClustered()){
-				throw new IllegalStateException("You did not assign every entity to a cluster");
+			System.out.println("Test read-ahead: " + iter.statistics());
+		} else {
+			//(case: multithreaded)
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, data.size()));
+			try {
+				//((queue documents))
+				List<Future<Pair<SerializedDatum,Collection<ClusteredMention>>>> results
+						= new ArrayList<Future<Pair<SerializedDatum,Collection<ClusteredMention>>>>(data.size());
+				for(int i=0; i<data.size(); i++){
+					final int index = i;
+					results.add(pool.submit(new Callable<Pair<SerializedDatum,Collection<ClusteredMention>>>(){
+						public Pair<SerializedDatum,Collection<ClusteredMention>> call() {
+							return runDocument(data, index, mentionType);
+						}
+					}));
+				}
+				//((enter scores in document order))
+				for(int i=0; i<results.size(); i++){
+					Pair<SerializedDatum,Collection<ClusteredMention>> result = results.get(i).get();
+					results.set(i, null);  // (the guesses are not needed once scored)
+					score.enter(result.getFirst().document, result.getSecond(), result.getFirst().goldClusters);
+				}
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+				throw new RuntimeException(e.getCause());
+			} finally {
+				pool.shutdownNow();
 			}
-			//(enter score)
-			Collection<Entity> gold = datum.goldClusters;
-			score.enter(datum.document, guess, gold);
+		}
+		if(system instanceof CoreferenceSystem.Reporting){
+			System.out.println(((CoreferenceSystem.Reporting) system).report());
 		}
 		//--Return
 		return score;
 	}
 
-	public String debug(File[] data, Properties props){
+	/**
+	 * Read a document, run coreference on it, and check that the result is sane.
+	 * This is called concurrently from test() if more than one thread is requested.
+	 * @param data The corpus to read from
+	 * @param i The index of the document to run on
+	 * @param mentionType One of "gold" or "predicted"
+	 * @return The decoded datum, along with the system's guess for it
+	 */
+	private Pair<SerializedDatum,Collection<ClusteredMention>> runDocument(Corpus data, int i, String mentionType){
+		SerializedDatum datum = data.get(i);
+		return Pair.make(datum, runDocument(datum, mentionType));
+	}
+
+	/**
+	 * Run coreference on a decoded document, and check that the result is sane.
+	 * @param datum The document to run on
+	 * @param mentionType One of "gold" or "predicted"
+	 * @return The system's guess for the document
+	 */
+	private Collection<ClusteredMention> runDocument(SerializedDatum datum, String mentionType){
+		//(set mentions)
+		selectMentions(datum, mentionType).resetCoreference();
+		//(run coreference)
+		Collection<ClusteredMention> guess = system.runCoreference(datum.document);
+		HashSet<ClusteredMention> uniqueCheck = new HashSet<ClusteredMention>();
+		for(ClusteredMention m : guess){ uniqueCheck.add(m); }
+		if(uniqueCheck.size() != guess.size()){
+			throw new IllegalStateException("You added the same mention to the return list twice");
+		}
+		if(guess.size() != datum.document.getMentions().size()){
+			throw new IllegalStateException("You did not assign every entity to a cluster (returned a different sized list)");
+		}
+		if(!datum.document.areAllMentionsClustered()){
+			throw new IllegalStateException("You did not assign every entity to a cluster");
+		}
+		//(return)
+		return guess;
+	}
+
+	/**
+	 * The number of background threads decoding documents when -readAhead is set
+	 */
+	private static int readAheadThreads(Properties props){
+		int threads = Integer.parseInt(props.getProperty("readAheadThreads", "1"));
+		if(threads <= 0){ throw new IllegalArgumentException("Invalid number of read-ahead threads: " + threads); }
+		return threads;
+	}
+
+	public String debug(Corpus data, Properties props){
 		//--Variables
 		//(get properties)
 		String mentionType = props.getProperty("mentionExtractor", "gold");
@@ -456,22 +788,13 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 		//(documents read)
 		int numDocumentsRead = 0;
 		//--Run Coreference
-		for(File f : data){
+		for(int i=0; i<data.size(); i++){
 			if(numDocumentsRead >= numDocuments){ break; }
 			numDocumentsRead += 1;
-			SerializedDatum datum = getDatum(f);
+			SerializedDatum datum = data.get(i);
 			Document doc = datum.document;
-			//(get mentions)
-			List<Mention> mentions = null;
-			if(mentionType.equalsIgnoreCase("gold")){
-				mentions = datum.goldMentions;
-			} else if(mentionType.equalsIgnoreCase("predicted")) {
-				mentions = datum.predictedMentions;
-			} else {
-				throw new IllegalArgumentException("Unknown mention extractor: " + mentionType);
-			}
 			//(set mentions)
-			datum.document.setMentions(mentions);
+			selectMentions(datum, mentionType).resetCoreference();
 			//(run coreference)
 			Collection<ClusteredMention> guess = system.runCoreference(datum.document);
 			//(enter score)
@@ -486,6 +809,11 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 	private static SerializedDatum getDatum(File serializedDatum){
 		try{
 			if(plaintext){
+				File binary = BinaryCorpus.binaryFile(serializedDatum);
+				if(binary.exists()){
+					//(case: binary version of a plaintext datum)
+					return BinaryCorpus.read(binary);
+				}
 				//(case: plaintext)
 				return SerializedDatum.decode(IOUtils.slurpFile(serializedDatum));
 			} else {
@@ -499,7 +827,7 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 		}
 	}
 
-	private static File[] getData(String dataPath, DataType dataType, int count){
+	static File[] getDataFiles(String dataPath, DataType dataType, int count){
 		File[] data = new File[count];
 		int i=0;
 		Iterable<File> files = plaintext
@@ -514,6 +842,43 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 				return data;
 	}
 
+	private static Corpus getData(String dataPath, DataType dataType, int count){
+		//(case: packed corpus)
+		File packed = PackedCorpus.packedFile(dataPath, dataType);
+		if(plaintext && packed.exists()){
+			try {
+				return PackedCorpus.open(packed, count);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		//(case: one file per document)
+		return new FileCorpus(getDataFiles(dataPath, dataType, count));
+	}
+
+	/**
+	 * Create a coreference system from its class name
+	 * @param systemClass The class name, optionally without the cs224n.corefsystems package, or "baseline"
+	 * @return A new instance of the system
+	 */
+	private static CoreferenceSystem createSystem(String systemClass){
+		//(classname)
+		if(systemClass.equalsIgnoreCase("baseline")){ systemClass = BaselineCoreferenceSystem.class.getName(); }
+		//(create)
+		try{
+			//((try loading the class))
+			return MetaClass.create(systemClass).createInstance();
+		} catch(MetaClass.ClassCreationException e){
+			//((maybe you forgot to include the package))
+			try{
+				return MetaClass.create("cs224n.corefsystems."+systemClass).createInstance();
+			} catch(MetaClass.ClassCreationException e2){
+				//((give up loading the class))
+				throw e;
+			}
+		}
+	}
+
 	public static void main(String[] args) {
 		//--Get Properties
 		Properties props = StringUtils.argsToProperties(args);
@@ -541,23 +906,15 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 
 		//--Create Coreference Class
 		System.out.print("Creating model...");
-		//(classname)
-		String systemClass = props.getProperty("model","baseline");
-		if(systemClass.equalsIgnoreCase("baseline")){ systemClass = BaselineCoreferenceSystem.class.getName(); }
-		//(create)
-		CoreferenceSystem system;
-		try{
-			//((try loading the class))
-			system = MetaClass.create(systemClass).createInstance();
-		} catch(MetaClass.ClassCreationException e){
-			//((maybe you forgot to include the package))
-			try{
-				system = MetaClass.create("cs224n.corefsystems."+systemClass).createInstance();
-			} catch(MetaClass.ClassCreationException e2){
-				//((give up loading the class))
-				throw e;
-			}
+		CoreferenceSystem system = createSystem(props.getProperty("model","baseline"));
+		//(system to compare against)
+		CoreferenceSystem compareSystem = null;
+		if(props.containsKey("compare")){
+			compareSystem = createSystem(props.getProperty("compare"));
 		}
+		//(system options)
+		if(system instanceof CoreferenceSystem.Configurable){ ((CoreferenceSystem.Configurable) system).configure(props); }
+		if(compareSystem instanceof CoreferenceSystem.Configurable){ ((CoreferenceSystem.Configurable) compareSystem).configure(props); }
 		System.out.println("done");
 
 		//--Read Data
@@ -573,6 +930,8 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 			System.out.println("ERROR: not a directory");
 			System.exit(1);
 		}
+		//(load names)
+		Name.initialize(dataPath);
 		//(get number of documents)
 		int numDocs = -1;
 		try {
@@ -588,19 +947,40 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 		System.out.print("[" + numDocs + " train]...");
 		//(get serialized data)
 		//((train))
-		File[] train = getData(dataPath, DataType.TRAIN, numDocs);
+		Corpus train = documentCache(getData(dataPath, DataType.TRAIN, numDocs), props);
 		//((dev/test))
 		String dataTypeString = props.getProperty("data","dev");
-		File[] test = null;
+		Corpus test = null;
 		DataType dataType = null;
+		int numTestDocs = -1;
 		try {
 			dataType = DataType.valueOf(dataTypeString.toUpperCase());
-			System.out.print("["+(dataType == DataType.TEST ? NUM_TEST_EXAMPLES : NUM_DEV_EXAMPLES)+" " + dataType + "]...");
+			numTestDocs = dataType == DataType.TEST ? NUM_TEST_EXAMPLES : NUM_DEV_EXAMPLES;
 		} catch (IllegalArgumentException e) {
 			System.out.println("ERROR: bad -data flag type: " + dataTypeString);
 			System.exit(1);
 		}
-		test = getData(dataPath, dataType, dataType == DataType.TEST ? NUM_TEST_EXAMPLES : NUM_DEV_EXAMPLES);
+		//(scoring is streamed, so a larger evaluation set can be used for experiments)
+		if(props.containsKey("testDocuments")){
+			try {
+				numTestDocs = Integer.parseInt(props.getProperty("testDocuments"));
+			} catch(NumberFormatException e) {
+				System.out.println("ERROR: not a valid number of test documents: " + props.getProperty("testDocuments"));
+				System.exit(1);
+			}
+			if(numTestDocs <= 0){
+				System.out.println("ERROR: not a valid number of test documents: " + numTestDocs);
+				System.exit(1);
+			}
+		}
+		try {
+			CoreferenceScore.Metric.parse(props.getProperty("metrics", "muc,b3"));
+		} catch (IllegalArgumentException e) {
+			System.out.println("ERROR: bad -metrics flag: " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.print("["+numTestDocs+" " + dataType + "]...");
+		test = documentCache(getData(dataPath, dataType, numTestDocs), props);
 		System.out.println("done");
 
 		//--TRAIN/TEST
@@ -616,6 +996,20 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 		System.out.println(" TESTING");
 		System.out.println("---------");
 		CoreferenceScore testScore = tester.test(test, props);
+		//(comparison system)
+		CoreferenceScore compareTrainScore = null;
+		CoreferenceScore compareTestScore = null;
+		if(compareSystem != null){
+			CoreferenceTester<CoreferenceSystem> compareTester = new CoreferenceTester<CoreferenceSystem>(compareSystem);
+			System.out.println("------------------------");
+			System.out.println(" TRAINING (COMPARISON)");
+			System.out.println("------------------------");
+			compareTrainScore = compareTester.train(train, props);
+			System.out.println("-----------------------");
+			System.out.println(" TESTING (COMPARISON)");
+			System.out.println("-----------------------");
+			compareTestScore = compareTester.test(test, props);
+		}
 		//(debug)
 		if(props.containsKey("mistakes")){
 			System.out.println("----------------");
@@ -623,6 +1017,9 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 			System.out.println("----------------");
 			System.out.println(tester.debug(test, props));
 		}
+		//(caches)
+		if(train instanceof CachedCorpus){ System.out.println("Training document cache: " + ((CachedCorpus) train).shutdown()); }
+		if(test instanceof CachedCorpus){ System.out.println("Test document cache: " + ((CachedCorpus) test).shutdown()); }
 		//(report)
 		System.out.println("--------------------");
 		System.out.println(" COREFERENCE SCORES");
@@ -632,6 +1029,25 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 		System.out.println();
 		System.out.println("--"+props.getProperty("data","dev")+"--");
 		testScore.report();
+		//(comparison)
+		if(compareSystem != null){
+			System.out.println();
+			System.out.println("--Training (" + props.getProperty("compare") + ")--");
+			compareTrainScore.report();
+			System.out.println();
+			System.out.println("--"+props.getProperty("data","dev")+" (" + props.getProperty("compare") + ")--");
+			compareTestScore.report();
+			int resamples = Integer.parseInt(props.getProperty("bootstrap", "10000"));
+			long seed = Long.parseLong(props.getProperty("bootstrapSeed", "42"));
+			int threads = Integer.parseInt(props.getProperty("bootstrapThreads", "" + Runtime.getRuntime().availableProcessors()));
+			long start = System.currentTimeMillis();
+			List<PairedBootstrap.Result> results = new PairedBootstrap(testScore, compareTestScore)
+					.run(testScore.metrics(), resamples, 0.95, seed, threads);
+			System.out.println();
+			System.out.println("--Paired bootstrap: " + props.getProperty("model","baseline") + " vs " + props.getProperty("compare")
+					+ " (" + resamples + " resamples, 95% intervals, " + (System.currentTimeMillis() - start) + "ms)--");
+			for(PairedBootstrap.Result result : results){ System.out.println(result); }
+		}
 
 	}
 
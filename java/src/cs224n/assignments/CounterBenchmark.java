@@ -0,0 +1,203 @@
+package cs224n.assignments;
+
+import cs224n.assignments.CoreferenceTester.DataType;
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.coref.Mention;
+import cs224n.util.*;
+
+import java.util.*;
+
+/**
+ * Times gathering head word statistics over the mentions of a data split, as
+ * training a rule based system does, with the boxed counters (Counter and CounterMap)
+ * and the primitive ones (DoubleCounter, IntDoubleCounter and DoubleCounterMap):
+ * <ul>
+ *   <li>unigrams: the count of every mention's head word</li>
+ *   <li>pairs: the count of the head words of every ordered pair of mentions in a document</li>
+ * </ul>
+ * The int keyed counters count head word ids from an Indexer. For each counter, the
+ * time per increment is printed, and the counts of every counter are checked against
+ * those of the boxed counter.
+ */
+public class CounterBenchmark {
+
+  private static abstract class Workload {
+    private final String name;
+    private Workload(String name){ this.name = name; }
+    /** Count over every document; returns the counter */
+    public abstract Object run(List<String[]> heads, List<int[]> ids);
+    /** The count of a pair of head words (the second is ignored when counting unigrams) */
+    public abstract double count(Object counter, String first, String second, Indexer<String> index);
+  }
+
+  private static final Workload UNIGRAM_COUNTER = new Workload("Counter"){
+    public Object run(List<String[]> heads, List<int[]> ids){
+      Counter<String> counter = new Counter<String>();
+      for(String[] doc : heads){
+        for(String head : doc){ counter.incrementCount(head, 1.0); }
+      }
+      return counter;
+    }
+    @SuppressWarnings("unchecked")
+    public double count(Object counter, String first, String second, Indexer<String> index){
+      return ((Counter<String>) counter).getCount(first);
+    }
+  };
+
+  private static final Workload UNIGRAM_DOUBLE = new Workload("DoubleCounter"){
+    public Object run(List<String[]> heads, List<int[]> ids){
+      DoubleCounter<String> counter = new DoubleCounter<String>();
+      for(String[] doc : heads){
+        for(String head : doc){ counter.incrementCount(head, 1.0); }
+      }
+      return counter;
+    }
+    @SuppressWarnings("unchecked")
+    public double count(Object counter, String first, String second, Indexer<String> index){
+      return ((DoubleCounter<String>) counter).getCount(first);
+    }
+  };
+
+  private static final Workload UNIGRAM_INT = new Workload("IntDouble"){
+    public Object run(List<String[]> heads, List<int[]> ids){
+      IntDoubleCounter counter = new IntDoubleCounter();
+      for(int[] doc : ids){
+        for(int head : doc){ counter.incrementCount(head, 1.0); }
+      }
+      return counter;
+    }
+    public double count(Object counter, String first, String second, Indexer<String> index){
+      return ((IntDoubleCounter) counter).getCount(index.indexOf(first));
+    }
+  };
+
+  private static final Workload PAIR_COUNTER = new Workload("CounterMap"){
+    public Object run(List<String[]> heads, List<int[]> ids){
+      CounterMap<String,String> counter = new CounterMap<String,String>();
+      for(String[] doc : heads){
+        for(int i=0; i<doc.length; i++){
+          for(int j=i+1; j<doc.length; j++){ counter.incrementCount(doc[i], doc[j], 1.0); }
+        }
+      }
+      return counter;
+    }
+    @SuppressWarnings("unchecked")
+    public double count(Object counter, String first, String second, Indexer<String> index){
+      return ((CounterMap<String,String>) counter).getCount(first, second);
+    }
+  };
+
+  private static final Workload PAIR_DOUBLE = new Workload("DoubleMap"){
+    public Object run(List<String[]> heads, List<int[]> ids){
+      DoubleCounterMap<String,String> counter = new DoubleCounterMap<String,String>();
+      for(String[] doc : heads){
+        for(int i=0; i<doc.length; i++){
+          for(int j=i+1; j<doc.length; j++){ counter.incrementCount(doc[i], doc[j], 1.0); }
+        }
+      }
+      return counter;
+    }
+    @SuppressWarnings("unchecked")
+    public double count(Object counter, String first, String second, Indexer<String> index){
+      return ((DoubleCounterMap<String,String>) counter).getCount(first, second);
+    }
+  };
+
+  private static final Workload PAIR_INT = new Workload("IntDouble[]"){
+    public Object run(List<String[]> heads, List<int[]> ids){
+      //(a counter over second ids for each first id)
+      int numIds = 0;
+      for(int[] doc : ids){
+        for(int head : doc){ numIds = Math.max(numIds, head + 1); }
+      }
+      IntDoubleCounter[] counters = new IntDoubleCounter[numIds];
+      for(int[] doc : ids){
+        for(int i=0; i<doc.length; i++){
+          IntDoubleCounter counter = counters[doc[i]];
+          if(counter == null){ counter = counters[doc[i]] = new IntDoubleCounter(); }
+          for(int j=i+1; j<doc.length; j++){ counter.incrementCount(doc[j], 1.0); }
+        }
+      }
+      return counters;
+    }
+    public double count(Object counter, String first, String second, Indexer<String> index){
+      IntDoubleCounter counts = ((IntDoubleCounter[]) counter)[index.indexOf(first)];
+      return counts == null ? 0.0 : counts.getCount(index.indexOf(second));
+    }
+  };
+
+  private static Object time(Workload workload, List<String[]> heads, List<int[]> ids, long increments, int rounds){
+    //(warm up)
+    for(int round=0; round<Math.max(1, rounds/4); round++){ workload.run(heads, ids); }
+    //(time)
+    Object counter = null;
+    long start = System.nanoTime();
+    for(int round=0; round<rounds; round++){ counter = workload.run(heads, ids); }
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format("  %-14s %8.1f ns/increment",
+        workload.name, ((double) elapsed) / ((double) increments * rounds)));
+    return counter;
+  }
+
+  private static void check(Workload reference, Object expected, Workload workload, Object actual,
+                            List<String[]> heads, Indexer<String> index, boolean pairs){
+    for(String[] doc : heads){
+      for(int i=0; i<doc.length; i++){
+        for(int j=pairs ? i+1 : i; j<(pairs ? doc.length : i+1); j++){
+          double want = reference.count(expected, doc[i], doc[j], index);
+          double got = workload.count(actual, doc[i], doc[j], index);
+          if(want != got){
+            throw new IllegalStateException(workload.name + " counted " + got + " for " + doc[i] + "/" + doc[j] + "; expected " + want);
+          }
+        }
+      }
+    }
+  }
+
+  private static void compare(String title, Workload[] workloads, List<String[]> heads, List<int[]> ids,
+                              Indexer<String> index, long increments, int rounds, boolean pairs){
+    System.out.println(title + " (" + increments + " increments), " + rounds + " rounds:");
+    Object expected = time(workloads[0], heads, ids, increments, rounds);
+    for(int w=1; w<workloads.length; w++){
+      Object actual = time(workloads[w], heads, ids, increments, rounds);
+      check(workloads[0], expected, workloads[w], actual, heads, index, pairs);
+    }
+  }
+
+  /**
+   * Run the benchmark
+   * @param args -path [data path] -documents [number of documents] -data [train|dev|test] -rounds [repetitions]
+   */
+  public static void main(String[] args){
+    Properties props = StringUtils.argsToProperties(args);
+    String dataPath = props.getProperty("path", CoreferenceTester.dataPath);
+    int count = Integer.parseInt(props.getProperty("documents", "100"));
+    DataType type = DataType.valueOf(props.getProperty("data", "train").toUpperCase());
+    int rounds = Integer.parseInt(props.getProperty("rounds", "20"));
+    //--Load Head Words
+    CoreferenceTester.Corpus documents = new CoreferenceTester.FileCorpus(CoreferenceTester.getDataFiles(dataPath, type, count));
+    Indexer<String> index = new Indexer<String>();
+    List<String[]> heads = new ArrayList<String[]>();
+    List<int[]> ids = new ArrayList<int[]>();
+    long unigrams = 0;
+    long pairs = 0;
+    for(int d=0; d<documents.size(); d++){
+      SerializedDatum datum = documents.get(d);
+      List<Mention> mentions = datum.goldMentions;
+      String[] docHeads = new String[mentions.size()];
+      int[] docIds = new int[mentions.size()];
+      for(int i=0; i<mentions.size(); i++){
+        docHeads[i] = mentions.get(i).headWord();
+        docIds[i] = index.addAndGetIndex(docHeads[i]);
+      }
+      heads.add(docHeads);
+      ids.add(docIds);
+      unigrams += docHeads.length;
+      pairs += ((long) docHeads.length) * (docHeads.length - 1) / 2;
+    }
+    System.out.println("Head words of " + unigrams + " mentions in " + documents.size() + " documents (" + index.size() + " distinct)");
+    //--Time
+    compare("Unigrams", new Workload[]{ UNIGRAM_COUNTER, UNIGRAM_DOUBLE, UNIGRAM_INT }, heads, ids, index, unigrams, rounds, false);
+    compare("Pairs", new Workload[]{ PAIR_COUNTER, PAIR_DOUBLE, PAIR_INT }, heads, ids, index, pairs, rounds, true);
+  }
+}
@@ -0,0 +1,146 @@
+package cs224n.assignments;
+
+import cs224n.assignments.CoreferenceTester.DataType;
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.util.IOUtils;
+import cs224n.util.StringUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+
+/**
+ * All the documents of a data split (train, dev or test) packed into a single file,
+ * and read through a memory mapped buffer.
+ *
+ * The file consists of a header (a magic number and the number of documents),
+ * an index of document offsets, and the documents themselves in the binary format of
+ * {@link BinaryCorpus}. Reading the i'th document is therefore a lookup in the
+ * offset index followed by a decode; opening the corpus does not touch the individual
+ * document files.
+ *
+ * Running main() packs each split found in the data directory; CoreferenceTester will
+ * read the packed file for a split in preference to the individual document files
+ * when it exists.
+ */
+public class PackedCorpus implements CoreferenceTester.Corpus {
+  private static final int MAGIC = 0xC0AEF002;
+  private static final int HEADER_BYTES = 8;
+
+  private final ByteBuffer buffer;
+  private final int size;
+
+  private PackedCorpus(ByteBuffer buffer, int size){
+    this.buffer = buffer;
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Decode the i'th document of the corpus. This method is safe to call from
+   * multiple threads.
+   * @param i The index of the document to read
+   * @return A freshly decoded datum
+   */
+  public SerializedDatum get(int i) {
+    if(i < 0 || i >= size){ throw new IndexOutOfBoundsException(""+i); }
+    long begin = buffer.getLong(HEADER_BYTES + 8*i);
+    long end = buffer.getLong(HEADER_BYTES + 8*(i+1));
+    ByteBuffer view = buffer.duplicate();
+    view.limit((int) end);
+    view.position((int) begin);
+    return BinaryCorpus.decode(view);
+  }
+
+  /**
+   * The location of the packed corpus for a given data split
+   * @param dataPath The root of the data directory
+   * @param type The data split
+   * @return The path of the packed file (it may not exist)
+   */
+  public static File packedFile(String dataPath, DataType type){
+    String dir = CoreferenceTester.conllData(type);
+    return new File(dataPath + "/" + dir.substring(0, dir.length() - ".ser/".length()) + ".corpus");
+  }
+
+  /**
+   * Open a packed corpus, mapping it into memory.
+   * @param file The packed file
+   * @param count The number of documents to expose; the corpus must contain at least this many
+   * @return A corpus over the first count documents of the file
+   * @throws IOException If the file could not be read
+   */
+  public static PackedCorpus open(File file, int count) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if(channel.size() > Integer.MAX_VALUE){ throw new IllegalArgumentException("Packed corpus is too large to map: " + file); }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if(buffer.getInt(0) != MAGIC){ throw new IllegalStateException("Not a packed corpus: " + file); }
+      int available = buffer.getInt(4);
+      if(count > available){ throw new IllegalArgumentException("Could not load " + count + " documents; only " + available + " available"); }
+      return new PackedCorpus(buffer, count);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Pack a collection of documents into a single file.
+   * @param documents The documents to pack, in order
+   * @param file The file to write
+   * @throws IOException If the file could not be written
+   */
+  public static void pack(CoreferenceTester.Corpus documents, File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0);
+      int count = documents.size();
+      //(header)
+      raf.writeInt(MAGIC);
+      raf.writeInt(count);
+      //(reserve index)
+      long[] offsets = new long[count+1];
+      raf.seek(HEADER_BYTES + 8L*(count+1));
+      //(documents)
+      for(int i=0; i<count; i++){
+        offsets[i] = raf.getFilePointer();
+        raf.write(BinaryCorpus.encode(documents.get(i)));
+      }
+      offsets[count] = raf.getFilePointer();
+      //(index)
+      raf.seek(HEADER_BYTES);
+      for(long offset : offsets){ raf.writeLong(offset); }
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Pack every data split in the data directory into a single file per split
+   * @param args -path [data path]
+   */
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    String dataPath = props.getProperty("path", CoreferenceTester.dataPath);
+    for(DataType type : DataType.values()){
+      File dir = new File(dataPath + "/" + CoreferenceTester.conllData(type));
+      if(!dir.isDirectory()){
+        System.out.println("Skipping " + type + " (no such directory: " + dir + ")");
+        continue;
+      }
+      System.out.print("Packing " + type + "...");
+      int count = 0;
+      for(File f : IOUtils.iterFilesRecursive(dir, ".dat")){ count += 1; }
+      CoreferenceTester.Corpus documents = new CoreferenceTester.FileCorpus(CoreferenceTester.getDataFiles(dataPath, type, count));
+      File packed = packedFile(dataPath, type);
+      pack(documents, packed);
+      System.out.println("done [" + count + " documents; " + packed.length() + " bytes]");
+    }
+  }
+}
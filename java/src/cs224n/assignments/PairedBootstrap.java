@@ -0,0 +1,224 @@
+package cs224n.assignments;
+
+import cs224n.assignments.CoreferenceTester.CoreferenceScore;
+import cs224n.assignments.CoreferenceTester.CoreferenceScore.Metric;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A paired bootstrap comparison of two coreference systems run on the same documents
+ * (Efron and Tibshirani 1993; Koehn 2004; Berg-Kirkpatrick et al. 2012).
+ *
+ * Each resample draws as many documents as were scored, with replacement, and scores
+ * both systems on the same draw by summing the documents' statistics kept by each
+ * {@link CoreferenceScore}. Coreference is not run again, and no document is re-read.
+ * Resamples are split into fixed blocks, each with its own random seed drawn from the
+ * master seed, and the blocks are run on a thread pool; the results therefore depend
+ * only on the seed, and not on the number of threads.
+ *
+ * For each metric, the result gives a percentile confidence interval for the F1 of
+ * each system and for their difference, along with a two-sided p-value for the null
+ * hypothesis that the difference is zero: the fraction of resamples whose difference
+ * is at least as far from the observed difference as the observed difference is from zero.
+ *
+ * A resample can draw only documents on which a metric is undefined for one of the
+ * systems (e.g. B^3 on documents with no mentions, or a MUC F1 of 0/0). Such a resample
+ * is scored as an F1 of 0 for that system, and counted in the result.
+ */
+public class PairedBootstrap {
+  private static final int BLOCK_SIZE = 250;
+
+  /** The comparison of two systems under one metric */
+  public static class Result {
+    public final Metric metric;
+    /** The F1 of each system on the documents as scored, and their difference (first minus second) */
+    public final double f1First;
+    public final double f1Second;
+    public final double difference;
+    /** The confidence intervals, as {lower, upper} */
+    public final double[] intervalFirst;
+    public final double[] intervalSecond;
+    public final double[] intervalDifference;
+    public final double pValue;
+    /** The number of resamples on which the metric was undefined for either system, and scored as 0 */
+    public final int undefined;
+
+    private Result(Metric metric, double f1First, double f1Second,
+                   double[] intervalFirst, double[] intervalSecond, double[] intervalDifference, double pValue, int undefined){
+      this.metric = metric;
+      this.f1First = f1First;
+      this.f1Second = f1Second;
+      this.difference = f1First - f1Second;
+      this.intervalFirst = intervalFirst;
+      this.intervalSecond = intervalSecond;
+      this.intervalDifference = intervalDifference;
+      this.pValue = pValue;
+      this.undefined = undefined;
+    }
+
+    @Override
+    public String toString(){
+      return String.format("%s F1: %.4f [%.4f, %.4f] vs %.4f [%.4f, %.4f]; difference %+.4f [%+.4f, %+.4f], p = %.4f",
+          metric.name, f1First, intervalFirst[0], intervalFirst[1], f1Second, intervalSecond[0], intervalSecond[1],
+          difference, intervalDifference[0], intervalDifference[1], pValue)
+          + (undefined > 0 ? " (" + undefined + " undefined resamples scored as 0)" : "");
+    }
+  }
+
+  private final CoreferenceScore first;
+  private final CoreferenceScore second;
+  private final int numDocuments;
+  private final int widthFirst;
+  private final int widthSecond;
+  private final double[] statsFirst;   // document d's statistics are at [d*width, (d+1)*width)
+  private final double[] statsSecond;
+
+  /**
+   * Set up a comparison
+   * @param first The scores of the first system; must have kept its document statistics
+   * @param second The scores of the second system on the same documents, in the same order
+   */
+  public PairedBootstrap(CoreferenceScore first, CoreferenceScore second){
+    List<double[]> docsFirst = first.documentStatistics();
+    List<double[]> docsSecond = second.documentStatistics();
+    if(docsFirst.size() != docsSecond.size()){
+      throw new IllegalArgumentException("Systems were scored on different numbers of documents: " + docsFirst.size() + " and " + docsSecond.size());
+    }
+    if(docsFirst.isEmpty()){ throw new IllegalArgumentException("No documents to resample"); }
+    this.first = first;
+    this.second = second;
+    this.numDocuments = docsFirst.size();
+    this.widthFirst = docsFirst.get(0).length;
+    this.widthSecond = docsSecond.get(0).length;
+    this.statsFirst = flatten(docsFirst, widthFirst);
+    this.statsSecond = flatten(docsSecond, widthSecond);
+  }
+
+  private static double[] flatten(List<double[]> docs, int width){
+    double[] rtn = new double[docs.size() * width];
+    for(int d=0; d<docs.size(); d++){ System.arraycopy(docs.get(d), 0, rtn, d * width, width); }
+    return rtn;
+  }
+
+  /**
+   * Run the bootstrap
+   * @param metrics The metrics to compare; each must be computed by both scorers
+   * @param resamples The number of resamples
+   * @param confidence The coverage of the confidence intervals (e.g. 0.95)
+   * @param seed The random seed
+   * @param numThreads The number of threads to resample with
+   * @return One result per metric, in the order of the metrics given
+   */
+  public List<Result> run(Collection<Metric> metrics, int resamples, double confidence, long seed, int numThreads){
+    if(resamples <= 0){ throw new IllegalArgumentException("Invalid number of resamples: " + resamples); }
+    if(numThreads <= 0){ throw new IllegalArgumentException("Invalid number of threads: " + numThreads); }
+    final Metric[] metricArray = metrics.toArray(new Metric[metrics.size()]);
+    //--Resample
+    //(per metric: F1 of the first and second system in each resample)
+    final double[][] samplesFirst = new double[metricArray.length][resamples];
+    final double[][] samplesSecond = new double[metricArray.length][resamples];
+    Random seeds = new Random(seed);
+    List<Callable<Object>> blocks = new ArrayList<Callable<Object>>();
+    for(int start=0; start<resamples; start+=BLOCK_SIZE){
+      final int blockStart = start;
+      final int blockEnd = Math.min(resamples, start + BLOCK_SIZE);
+      final long blockSeed = seeds.nextLong();
+      blocks.add(new Callable<Object>(){
+        public Object call(){
+          resample(metricArray, blockStart, blockEnd, new Random(blockSeed), samplesFirst, samplesSecond);
+          return null;
+        }
+      });
+    }
+    if(numThreads == 1 || blocks.size() == 1){
+      //(case: single threaded)
+      for(Callable<Object> block : blocks){
+        try { block.call(); } catch(Exception e){ throw new RuntimeException(e); }
+      }
+    } else {
+      //(case: multithreaded)
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, blocks.size()));
+      try {
+        for(Future<Object> done : pool.invokeAll(blocks)){ done.get(); }
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+        throw new RuntimeException(e.getCause());
+      } finally {
+        pool.shutdownNow();
+      }
+    }
+    //--Summarize
+    List<Result> rtn = new ArrayList<Result>(metricArray.length);
+    for(int m=0; m<metricArray.length; m++){
+      double f1First = orZero(f1(first, metricArray[m], null));
+      double f1Second = orZero(f1(second, metricArray[m], null));
+      double observed = f1First - f1Second;
+      double[] differences = new double[resamples];
+      int extreme = 0;
+      int undefined = 0;
+      for(int r=0; r<resamples; r++){
+        if(Double.isNaN(samplesFirst[m][r]) || Double.isNaN(samplesSecond[m][r])){
+          undefined += 1;
+          samplesFirst[m][r] = orZero(samplesFirst[m][r]);
+          samplesSecond[m][r] = orZero(samplesSecond[m][r]);
+        }
+        differences[r] = samplesFirst[m][r] - samplesSecond[m][r];
+        if(Math.abs(differences[r] - observed) >= Math.abs(observed)){ extreme += 1; }
+      }
+      rtn.add(new Result(metricArray[m], f1First, f1Second,
+          interval(samplesFirst[m], confidence), interval(samplesSecond[m], confidence), interval(differences, confidence),
+          ((double) extreme) / ((double) resamples), undefined));
+    }
+    return rtn;
+  }
+
+  /*
+   * Fill in resamples [start, end) of each metric
+   */
+  private void resample(Metric[] metrics, int start, int end, Random rand, double[][] samplesFirst, double[][] samplesSecond){
+    double[] sumsFirst = new double[widthFirst];
+    double[] sumsSecond = new double[widthSecond];
+    for(int r=start; r<end; r++){
+      Arrays.fill(sumsFirst, 0.0);
+      Arrays.fill(sumsSecond, 0.0);
+      for(int k=0; k<numDocuments; k++){
+        int doc = rand.nextInt(numDocuments);
+        for(int i=0, j=doc*widthFirst; i<widthFirst; i++, j++){ sumsFirst[i] += statsFirst[j]; }
+        for(int i=0, j=doc*widthSecond; i<widthSecond; i++, j++){ sumsSecond[i] += statsSecond[j]; }
+      }
+      for(int m=0; m<metrics.length; m++){
+        samplesFirst[m][r] = f1(first, metrics[m], sumsFirst);
+        samplesSecond[m][r] = f1(second, metrics[m], sumsSecond);
+      }
+    }
+  }
+
+  /*
+   * The F1 of some sums of document statistics (or of every document, if null),
+   * or NaN if the metric is undefined on them
+   */
+  private static double f1(CoreferenceScore score, Metric metric, double[] sums){
+    try {
+      return (sums == null ? score.score(metric) : score.score(metric, sums))[2];
+    } catch(IllegalStateException e) {
+      return Double.NaN;  // (e.g. B^3 with a zero denominator)
+    }
+  }
+
+  private static double orZero(double f1){ return Double.isNaN(f1) ? 0.0 : f1; }
+
+  /*
+   * The percentile interval of a sample with the given coverage
+   */
+  private static double[] interval(double[] samples, double confidence){
+    double[] sorted = samples.clone();
+    Arrays.sort(sorted);
+    double tail = (1.0 - confidence) / 2.0;
+    int lower = (int) Math.floor(tail * sorted.length);
+    int upper = (int) Math.ceil((1.0 - tail) * sorted.length) - 1;
+    return new double[]{ sorted[Math.max(0, lower)], sorted[Math.min(sorted.length - 1, Math.max(lower, upper))] };
+  }
+}
@@ -0,0 +1,129 @@
+package cs224n.assignments;
+
+import cs224n.assignments.CoreferenceTester.DataType;
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.coref.Sentence;
+import cs224n.ling.Tree;
+import cs224n.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * Times looking up parse tree nodes in a map, as the Hobbs resolver used to do
+ * (a map from each node to its parent, filled with Tree.extractParentRelationship).
+ * Three kinds of map are compared over the parses of a data split:
+ * <ul>
+ *   <li>legacy: a HashMap using the previous Tree.hashCode (label and number of
+ *       children) and an unmemoized structural equals()</li>
+ *   <li>structural: a HashMap using the current, memoized structural Tree.hashCode</li>
+ *   <li>identity: the IdentityHashMap returned by Tree.extractParentRelationship(tree)</li>
+ * </ul>
+ * For each, the time per node (building the map and looking the node up) and the
+ * number of distinct entries are printed. The structural maps have fewer entries
+ * than there are nodes, since structurally identical subtrees share an entry.
+ */
+public class TreeHashBenchmark {
+
+  /** A tree key with the previous hashCode() and equals() of Tree */
+  private static class LegacyKey {
+    private final Tree<String> tree;
+    private LegacyKey(Tree<String> tree){ this.tree = tree; }
+    public boolean equals(Object o){
+      return o instanceof LegacyKey && legacyEquals(tree, ((LegacyKey) o).tree);
+    }
+    public int hashCode(){
+      return tree.getLabel().hashCode() ^ (tree.getChildren().size()<<16);
+    }
+    private static boolean legacyEquals(Tree<String> a, Tree<String> b){
+      if(!a.getLabel().equals(b.getLabel())){ return false; }
+      if(a.getChildren().size() != b.getChildren().size()){ return false; }
+      for(int i=0; i<a.getChildren().size(); i++){
+        if(!legacyEquals(a.getChildren().get(i), b.getChildren().get(i))){ return false; }
+      }
+      return true;
+    }
+  }
+
+  private static interface Lookup {
+    /** Build the map for a tree, and look up the parent of every node; returns the number of entries */
+    public int run(Tree<String> tree, List<Tree<String>> nodes);
+  }
+
+  private static final Lookup LEGACY = new Lookup(){
+    public int run(Tree<String> tree, List<Tree<String>> nodes){
+      Map<LegacyKey,Tree<String>> parentInfo = new HashMap<LegacyKey,Tree<String>>();
+      for(Tree<String> node : nodes){
+        for(Tree<String> child : node.getChildren()){ parentInfo.put(new LegacyKey(child), node); }
+      }
+      for(Tree<String> node : nodes){ parentInfo.get(new LegacyKey(node)); }
+      return parentInfo.size();
+    }
+  };
+
+  private static final Lookup STRUCTURAL = new Lookup(){
+    public int run(Tree<String> tree, List<Tree<String>> nodes){
+      Map<Tree<String>,Tree<String>> parentInfo = new HashMap<Tree<String>,Tree<String>>();
+      Tree.extractParentRelationship(tree, parentInfo);
+      for(Tree<String> node : nodes){ parentInfo.get(node); }
+      return parentInfo.size();
+    }
+  };
+
+  private static final Lookup IDENTITY = new Lookup(){
+    public int run(Tree<String> tree, List<Tree<String>> nodes){
+      Map<Tree<String>,Tree<String>> parentInfo = Tree.extractParentRelationship(tree);
+      for(Tree<String> node : nodes){ parentInfo.get(node); }
+      return parentInfo.size();
+    }
+  };
+
+  private static void time(String name, Lookup lookup, List<Tree<String>> trees, List<List<Tree<String>>> nodes, int rounds){
+    //(warm up)
+    for(int round=0; round<Math.max(1, rounds/4); round++){
+      for(int i=0; i<trees.size(); i++){ lookup.run(trees.get(i), nodes.get(i)); }
+    }
+    //(time)
+    long entries = 0;
+    long lookups = 0;
+    long start = System.nanoTime();
+    for(int round=0; round<rounds; round++){
+      for(int i=0; i<trees.size(); i++){
+        entries += lookup.run(trees.get(i), nodes.get(i));
+        lookups += nodes.get(i).size();
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format("  %-10s %8.1f ns/node   %d entries per round",
+        name, ((double) elapsed) / ((double) lookups), entries / rounds));
+  }
+
+  /**
+   * Run the benchmark
+   * @param args -path [data path] -documents [number of documents] -data [train|dev|test] -rounds [repetitions]
+   */
+  public static void main(String[] args){
+    Properties props = StringUtils.argsToProperties(args);
+    String dataPath = props.getProperty("path", CoreferenceTester.dataPath);
+    int count = Integer.parseInt(props.getProperty("documents", "100"));
+    DataType type = DataType.valueOf(props.getProperty("data", "dev").toUpperCase());
+    int rounds = Integer.parseInt(props.getProperty("rounds", "20"));
+    //--Load Parses
+    CoreferenceTester.Corpus documents = new CoreferenceTester.FileCorpus(CoreferenceTester.getDataFiles(dataPath, type, count));
+    List<Tree<String>> trees = new ArrayList<Tree<String>>();
+    List<List<Tree<String>>> nodes = new ArrayList<List<Tree<String>>>();
+    int numNodes = 0;
+    for(int i=0; i<documents.size(); i++){
+      SerializedDatum datum = documents.get(i);
+      for(Sentence sentence : datum.document.sentences){
+        trees.add(sentence.parse);
+        nodes.add(sentence.parse.getPreOrderTraversal());
+        numNodes += nodes.get(nodes.size()-1).size();
+      }
+    }
+    System.out.println("Parent lookups over " + trees.size() + " parses (" + numNodes + " nodes), " + rounds + " rounds:");
+    //--Time
+    time("legacy", LEGACY, trees, nodes, rounds);
+    time("structural", STRUCTURAL, trees, nodes, rounds);
+    time("identity", IDENTITY, trees, nodes, rounds);
+  }
+}
@@ -0,0 +1,156 @@
+package cs224n.coref;
+
+import cs224n.util.Pair;
+
+import java.util.List;
+
+/**
+ * Decides which earlier mentions are considered as antecedents of a mention.
+ *
+ * Candidates can be limited to a window (a maximum number of sentences and/or mentions
+ * back from the mention), and filtered by hard agreement constraints (a candidate whose
+ * number or gender is known to disagree with the mention is skipped). With no window
+ * and no filters, every earlier mention is a candidate.
+ *
+ * The generator counts the pairs it lets through and the pairs it prunes, so that
+ * the recall lost to pruning can be weighed against the time saved.
+ * A typical loop over candidates, nearest first, looks like:
+ * <pre>
+ *   int first = candidates.firstCandidate(doc, mentions, i);
+ *   for(int j=i-1; j>=first; j--){
+ *     if(!candidates.isCandidate(mentions.get(i), mentions.get(j))){ continue; }
+ *     ...
+ *   }
+ * </pre>
+ */
+public class CandidateGenerator {
+  /**
+   * The maximum number of sentences between a mention and its candidates
+   */
+  public final int maxSentenceDistance;
+  /**
+   * The maximum number of mentions between a mention and its candidates
+   */
+  public final int maxMentionDistance;
+  /**
+   * Skip candidates whose number disagrees with the mention
+   */
+  public final boolean filterNumber;
+  /**
+   * Skip candidates whose gender disagrees with the mention
+   */
+  public final boolean filterGender;
+
+  private long kept = 0;
+  private long outsideWindow = 0;
+  private long prunedByNumber = 0;
+  private long prunedByGender = 0;
+
+  /**
+   * Create a candidate generator
+   * @param maxSentenceDistance The maximum number of sentences back to look for candidates
+   * @param maxMentionDistance The maximum number of mentions back to look for candidates
+   * @param filterNumber If true, skip candidates with disagreeing number
+   * @param filterGender If true, skip candidates with disagreeing gender
+   */
+  public CandidateGenerator(int maxSentenceDistance, int maxMentionDistance, boolean filterNumber, boolean filterGender){
+    if(maxSentenceDistance < 0 || maxMentionDistance < 1){ throw new IllegalArgumentException("Candidate window must be non-empty"); }
+    this.maxSentenceDistance = maxSentenceDistance;
+    this.maxMentionDistance = maxMentionDistance;
+    this.filterNumber = filterNumber;
+    this.filterGender = filterGender;
+  }
+
+  /**
+   * The index of the earliest mention within the window of the i'th mention.
+   * Mentions must be in document order.
+   * @param doc The document the mentions are from
+   * @param mentions The mentions of the document
+   * @param i The index of the mention to find candidates for
+   * @return The smallest index j such that mention j is in the window of mention i
+   */
+  public int firstCandidate(Document doc, List<Mention> mentions, int i){
+    int first = i;
+    if(maxSentenceDistance == Integer.MAX_VALUE){
+      first = i - Math.min(i, maxMentionDistance);
+    } else {
+      int sentence = doc.indexOfSentence(mentions.get(i).sentence);
+      while(first > 0 && i - (first - 1) <= maxMentionDistance &&
+          sentence - doc.indexOfSentence(mentions.get(first - 1).sentence) <= maxSentenceDistance){
+        first -= 1;
+      }
+    }
+    outsideWindow += first;
+    return first;
+  }
+
+  /**
+   * Check a candidate against the agreement filters
+   * @param mention The mention to find an antecedent for
+   * @param candidate The candidate antecedent
+   * @return True if the candidate should be considered
+   */
+  public boolean isCandidate(Mention mention, Mention candidate){
+    if(filterNumber){
+      Pair<Boolean,Boolean> number = Util.haveNumberAndAreSameNumber(mention, candidate);
+      if(number.getFirst() && !number.getSecond()){ prunedByNumber += 1; return false; }
+    }
+    if(filterGender){
+      Pair<Boolean,Boolean> gender = Util.haveGenderAndAreSameGender(mention, candidate);
+      if(gender.getFirst() && !gender.getSecond()){ prunedByGender += 1; return false; }
+    }
+    kept += 1;
+    return true;
+  }
+
+  /**
+   * A generator with the same window and filters, whose counts start at zero;
+   * e.g., for counting on another thread, to be added back with addCounts()
+   * @return A new generator
+   */
+  public CandidateGenerator copy(){
+    return new CandidateGenerator(maxSentenceDistance, maxMentionDistance, filterNumber, filterGender);
+  }
+
+  /**
+   * Add the pair counts of another generator to the counts of this one
+   * @param other The generator whose counts to add
+   */
+  public void addCounts(CandidateGenerator other){
+    kept += other.kept;
+    outsideWindow += other.outsideWindow;
+    prunedByNumber += other.prunedByNumber;
+    prunedByGender += other.prunedByGender;
+  }
+
+  /**
+   * Reset the pair counts
+   */
+  public void resetCounts(){
+    kept = 0;
+    outsideWindow = 0;
+    prunedByNumber = 0;
+    prunedByGender = 0;
+  }
+
+  /**
+   * The number of pairs which passed the filters
+   */
+  public long kept(){ return kept; }
+
+  /**
+   * The number of pairs pruned, either by the window or by a filter
+   */
+  public long pruned(){ return outsideWindow + prunedByNumber + prunedByGender; }
+
+  /**
+   * A human-readable summary of the pairs kept and pruned since the last reset.
+   * Pairs outside the window are counted whether or not the search would have reached
+   * them; pairs removed by a filter are only counted if the search looked at them.
+   * @return A String summarizing the pair counts
+   */
+  public String summary(){
+    return "kept " + kept + " pairs; pruned " + pruned() +
+        " (" + outsideWindow + " outside window, " + prunedByNumber + " by number, " + prunedByGender + " by gender)";
+  }
+}
@@ -80,21 +80,16 @@ public class CoreNLPDocument implements Serializable {
   private static Tree<String> getTreeInSpan(Tree<String> tree, int beginInclusive, int endExclusive, int posSoFar){
     if(posSoFar < beginInclusive){
       //--Case: Span to the Right
-      int increment = 0;
-      for(Tree<String> child : tree.getChildren()){
-        int delta = child.getYield().size();
-        if(posSoFar+increment+delta <= beginInclusive){
-          //(case: still to the right)
-          increment += delta;
-        } else {
-          //(case: span somewhere in this tree)
-          Tree<String> cand = getTreeInSpan(child, beginInclusive, endExclusive, posSoFar+increment);
-          return cand == null ? tree : cand;
-        }
+      if(tree.isLeaf() || beginInclusive - posSoFar >= tree.getYieldLength()){
+        throw new IllegalArgumentException("Should not reach here");
       }
-      throw new IllegalArgumentException("Should not reach here");
+      //(case: span somewhere in the child covering its start)
+      int childIndex = tree.getChildIndexAt(beginInclusive - posSoFar);
+      Tree<String> cand = getTreeInSpan(tree.getChildren().get(childIndex), beginInclusive, endExclusive,
+          posSoFar + tree.getChildStart(childIndex));
+      return cand == null ? tree : cand;
     } else if(posSoFar == beginInclusive){
-      int length = tree.getYield().size();
+      int length = tree.getYieldLength();
       if(beginInclusive+length == endExclusive){
         //(case: exact match)
         return tree;
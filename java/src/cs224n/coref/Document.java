@@ -52,6 +52,19 @@ public class Document implements Serializable, Decodable {
     return this;
   }
 
+  /**
+   * Forgets the entity each mention of this document was marked coreferent with,
+   * so that coreference can be run again on the same document.
+   * You are not likely to call this method; it is used in the framework code
+   * @return The document
+   */
+  public Document resetCoreference(){
+    for(Mention mention : getMentions()){
+      mention.corefferentWith = null;
+    }
+    return this;
+  }
+
   /**
    * Returns the mentions associated with this document.
    * @return A list of mentions associated with the document.
@@ -5,6 +5,7 @@ import cs224n.util.Decodable;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -49,6 +50,16 @@ public class Mention implements Serializable, Decodable {
    */
   protected Entity corefferentWith = null;
 
+  /**
+   * The precomputed attributes of this mention, created on first use
+   */
+  private transient MentionFeatures features = null;
+  /**
+   * The gloss and the word ids of this mention, created on first use
+   */
+  private transient String gloss = null;
+  private transient int[] textIds = null;
+
   /**
    * Create a new mention from the necessary parameters.
    * You should not have to use this method.
@@ -97,17 +108,82 @@ public class Mention implements Serializable, Decodable {
   public Sentence.Token headToken(){ return sentence.tokens.get(headWordIndex); }
 
   /**
-   * A String reproduction of this mention
+   * A String reproduction of this mention, computed once per mention
    * @return The gloss for this mention
    */
   public String gloss(){
-    StringBuilder b = new StringBuilder();
-    List<String> words = text();
-    for(int i=0; i<words.size()-1; i++){
-      b.append(words.get(i)).append(" ");
+    if(gloss == null){
+      StringBuilder b = new StringBuilder();
+      List<String> words = text();
+      for(int i=0; i<words.size()-1; i++){
+        b.append(words.get(i)).append(" ");
+      }
+      if(words.size() > 0){ b.append(words.get(words.size()-1)); }
+      gloss = b.toString();
     }
-    if(words.size() > 0){ b.append(words.get(words.size()-1)); }
-    return b.toString();
+    return gloss;
+  }
+
+  /**
+   * The text of this mention, as the ids of its words in the SymbolTable.
+   * The array is shared, and should not be modified.
+   * @return The word ids corresponding to this mention
+   */
+  public int[] textIds(){
+    if(textIds == null){
+      int[] ids = new int[length()];
+      for(int i=0; i<ids.length; i++){
+        ids[i] = sentence.wordId(beginIndexInclusive + i);
+      }
+      textIds = ids;
+    }
+    return textIds;
+  }
+
+  /**
+   * Whether two mentions have the same text; that is, whether their glosses are equal
+   * @param other The mention to compare to
+   * @return True if the mentions consist of the same words
+   */
+  public boolean sameText(Mention other){
+    return Arrays.equals(textIds(), other.textIds());
+  }
+
+  /**
+   * Whether the gloss of another mention occurs in the gloss of this one; that is,
+   * whether gloss().indexOf(other.gloss()) != -1. The words the other mention spans
+   * in this one are compared by id, save for its first and last word,
+   * which may match the end and start of a word respectively.
+   * @param other The mention to look for
+   * @return True if the other mention's gloss is part of this mention's gloss
+   */
+  public boolean glossContains(Mention other){
+    int[] outer = textIds();
+    int[] inner = other.textIds();
+    if(inner.length <= 1){ return gloss().indexOf(other.gloss()) != -1; }
+    int last = inner.length - 1;
+    for(int start=0; start+last<outer.length; start++){
+      //(inner words must match exactly)
+      boolean match = true;
+      for(int k=1; k<last && match; k++){ match = outer[start+k] == inner[k]; }
+      //(the first and last word may match partially)
+      if(match &&
+          (outer[start] == inner[0] || SymbolTable.symbol(outer[start]).endsWith(SymbolTable.symbol(inner[0]))) &&
+          (outer[start+last] == inner[last] || SymbolTable.symbol(outer[start+last]).startsWith(SymbolTable.symbol(inner[last])))){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The attributes of this mention commonly used as features (gloss, pronoun, name, etc.),
+   * computed once per mention.
+   * @return The features of this mention
+   */
+  public MentionFeatures features(){
+    if(features == null){ features = new MentionFeatures(this); }
+    return features;
   }
 
   /**
@@ -0,0 +1,141 @@
+package cs224n.coref;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A partition of the mentions of a document into clusters, stored as a
+ * disjoint-set forest over mention indices (union by rank, with path compression).
+ *
+ * Each cluster keeps a summary of its members: the member indices in document order,
+ * and the number of members which are pronouns. The summary of a cluster is only
+ * valid for the cluster's root (see find()).
+ */
+public class MentionClusters {
+  private final List<Mention> mentions;
+  private final int[] parent;
+  private final int[] rank;
+  private final List<List<Integer>> members;
+  private final int[] pronouns;
+
+  /**
+   * Create a partition in which every mention is a singleton
+   * @param mentions The mentions of the document, in document order
+   */
+  public MentionClusters(List<Mention> mentions){
+    this.mentions = mentions;
+    this.parent = new int[mentions.size()];
+    this.rank = new int[mentions.size()];
+    this.members = new ArrayList<List<Integer>>(mentions.size());
+    this.pronouns = new int[mentions.size()];
+    for(int i=0; i<mentions.size(); i++){
+      parent[i] = i;
+      List<Integer> singleton = new ArrayList<Integer>(1);
+      singleton.add(i);
+      members.add(singleton);
+      pronouns[i] = mentions.get(i).features().isPronoun ? 1 : 0;
+    }
+  }
+
+  /**
+   * The root of the cluster containing a mention
+   * @param i The index of the mention
+   * @return The index of the root of its cluster
+   */
+  public int find(int i){
+    int root = i;
+    while(parent[root] != root){ root = parent[root]; }
+    while(parent[i] != root){
+      int next = parent[i];
+      parent[i] = root;
+      i = next;
+    }
+    return root;
+  }
+
+  /**
+   * Merge the clusters of two mentions.
+   * The summary of the merged cluster is kept at the returned root.
+   * @param a The index of a mention
+   * @param b The index of another mention
+   * @return The root of the merged cluster
+   */
+  public int union(int a, int b){
+    int rootA = find(a);
+    int rootB = find(b);
+    if(rootA == rootB){ return rootA; }
+    if(rank[rootA] < rank[rootB]){ int tmp = rootA; rootA = rootB; rootB = tmp; }
+    parent[rootB] = rootA;
+    if(rank[rootA] == rank[rootB]){ rank[rootA] += 1; }
+    //(merge summaries)
+    members.set(rootA, merge(members.get(rootA), members.get(rootB)));
+    members.set(rootB, null);
+    pronouns[rootA] += pronouns[rootB];
+    return rootA;
+  }
+
+  private static List<Integer> merge(List<Integer> a, List<Integer> b){
+    List<Integer> rtn = new ArrayList<Integer>(a.size() + b.size());
+    int i = 0;
+    int j = 0;
+    while(i < a.size() || j < b.size()){
+      if(j >= b.size() || (i < a.size() && a.get(i) < b.get(j))){
+        rtn.add(a.get(i++));
+      } else {
+        rtn.add(b.get(j++));
+      }
+    }
+    return rtn;
+  }
+
+  /**
+   * The members of the cluster containing a mention
+   * @param i The index of a mention
+   * @return The indices of the mentions in its cluster, in document order
+   */
+  public List<Integer> members(int i){ return members.get(find(i)); }
+
+  /**
+   * The number of pronouns in the cluster containing a mention
+   * @param i The index of a mention
+   * @return The number of mentions in its cluster which are pronouns
+   */
+  public int pronouns(int i){ return pronouns[find(i)]; }
+
+  /**
+   * The roots of all clusters, ordered by the first mention of each cluster
+   * @return The index of the root of every cluster
+   */
+  public List<Integer> roots(){
+    List<Integer> rtn = new ArrayList<Integer>();
+    boolean[] seen = new boolean[parent.length];
+    for(int i=0; i<parent.length; i++){
+      int root = find(i);
+      if(!seen[root]){
+        seen[root] = true;
+        rtn.add(root);
+      }
+    }
+    return rtn;
+  }
+
+  /**
+   * Mark every mention as coreferent with the other mentions of its cluster
+   * @return The clustered mentions, cluster by cluster, in document order within a cluster
+   */
+  public List<ClusteredMention> markCoreference(){
+    List<ClusteredMention> rtn = new ArrayList<ClusteredMention>(parent.length);
+    for(int root : roots()){
+      ClusteredMention first = null;
+      for(int i : members.get(root)){
+        if(first == null){
+          first = mentions.get(i).markSingleton();
+          rtn.add(first);
+        } else {
+          rtn.add(mentions.get(i).markCoreferent(first));
+        }
+      }
+    }
+    return rtn;
+  }
+}
@@ -0,0 +1,85 @@
+package cs224n.coref;
+
+/**
+ * The attributes of a mention which coreference systems look at over and over
+ * (its gloss, whether it is a pronoun or a name, its gender, etc.).
+ * These are computed once, the first time a mention's features() are requested,
+ * rather than once for every pair of mentions the mention is part of.
+ */
+public class MentionFeatures {
+  /**
+   * The text of the mention (see Mention.gloss())
+   */
+  public final String gloss;
+  /**
+   * The text of the mention, in lower case
+   */
+  public final String lowercaseGloss;
+  /**
+   * True if the gloss is a known pronoun (see Pronoun.isSomePronoun())
+   */
+  public final boolean isPronoun;
+  /**
+   * The pronoun the gloss denotes, or null if it is not one of the pronouns in the enum.
+   * Note that some pronouns have isPronoun set but no value here.
+   */
+  public final Pronoun pronoun;
+  /**
+   * The person (1, 2 or 3) of the pronoun the gloss denotes, or 0 if it is not a pronoun
+   */
+  public final int person;
+  /**
+   * The name the gloss denotes, or null if it is not a known name
+   */
+  public final Name name;
+  /**
+   * The gender of the name the gloss denotes; Gender.NEUTRAL if it is not a name
+   */
+  public final Gender nameGender;
+  /**
+   * True if the mention starts with the definite article
+   */
+  public final boolean isDefinite;
+  /**
+   * The head word of the mention
+   */
+  public final String headWord;
+  /**
+   * The id of the head word in the SymbolTable
+   */
+  public final int headWordId;
+  /**
+   * True if the head word is a known pronoun
+   */
+  public final boolean headIsPronoun;
+  /**
+   * The named entity tag of the head word
+   */
+  public final String nerTag;
+
+  /**
+   * Compute the features of a mention.
+   * You should use Mention.features() rather than calling this directly.
+   * @param mention The mention to compute the features of
+   */
+  public MentionFeatures(Mention mention){
+    this.gloss = mention.gloss();
+    this.lowercaseGloss = gloss.toLowerCase();
+    this.isPronoun = Pronoun.isSomePronoun(gloss);
+    this.pronoun = Pronoun.valueOrNull(gloss);
+    this.person = Pronoun.person(gloss);
+    this.name = Name.get(gloss);
+    this.nameGender = Name.gender(gloss);
+    this.isDefinite = lowercaseGloss.startsWith("the ");
+    this.headWord = mention.headWord();
+    this.headWordId = mention.sentence.wordId(mention.headWordIndex);
+    this.headIsPronoun = Pronoun.isSomePronoun(headWord);
+    this.nerTag = mention.headToken().nerTag();
+  }
+
+  /**
+   * True if the gloss is a known name
+   * @return True if this mention is a name
+   */
+  public boolean isName(){ return name != null; }
+}
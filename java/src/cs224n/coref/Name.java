@@ -3,15 +3,29 @@ package cs224n.coref;
 import cs224n.assignments.CoreferenceTester;
 import cs224n.util.IOUtils;
 import cs224n.util.Pair;
+import cs224n.util.StringUtils;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
 
 /**
  * Denotes some information about a name; the static class
  * contains a collection of possible names (stored in a file and initialized
  * on first use) and some information about them.
  *
+ * The collection of names (the gazetteer) is read from baby_names.dat in the data
+ * directory, and is loaded by initialize(). If it has not been initialized, it is
+ * loaded from CoreferenceTester.dataPath on the first lookup.
+ * The gazetteer is a table sorted by lowercased name, with the information about each
+ * name in flat arrays; lookups hash the name ignoring case, and are safe from multiple threads.
+ * Running main() writes the table to a binary file (baby_names.gazetteer), which
+ * is memory mapped in preference to parsing baby_names.dat when it exists.
+ *
  * @author Gabor Angeli (angeli at cs.stanford)
  */
 public class Name {
@@ -48,31 +62,178 @@ public class Name {
     }
   }
 
-  private static class NameInfo {
-    private int yearsUsed = 0;
-    private Gender gender = Gender.NEUTRAL;
-    private double percentSum = 0.0;
-    private double percentMale = 0.0;
-    private double percentFemale = 0.0;
-    private int startYear = 3000;
-    private int endYear = 0;
+  /**
+   * The sorted table of names, stored in a buffer (either memory mapped from a binary
+   * gazetteer file, or built in memory from the text file). The buffer holds:
+   * <pre>
+   *   int magic, int n, int numChars
+   *   int[n+1]  the offset of each name in the character arrays
+   *   int[n]    the first year each name was used
+   *   int[n]    the last year each name was used
+   *   double[n] percentUse, then double[n] percentUseMale, then double[n] percentUseFemale
+   *   byte[n]   the ordinal of the gender of each name
+   *   char[numChars] the lowercased names, in sorted order
+   *   char[numChars] the names as written (in the same order)
+   * </pre>
+   * The offsets, lowercased names and genders, which every lookup reads, are copied into
+   * arrays when the gazetteer is loaded, and the names are hashed into an open addressing
+   * table; the rest is read from the buffer when a Name is first requested.
+   * Only absolute reads are made from the buffer, so it can be shared between threads.
+   */
+  private static class Gazetteer {
+    private static final int MAGIC = 0xC0AEF003;
+    private static final int HEADER_BYTES = 12;
+    private static final Gender[] GENDERS = Gender.values();
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int[] offsets;
+    private final char[] keys;
+    private final byte[] genders;
+    private final int[] slots;  // (the index + 1 of the name hashed to each slot, or 0)
+    private final int mask;
+    private final int startYears;
+    private final int endYears;
+    private final int percentUse;
+    private final int percentUseMale;
+    private final int percentUseFemale;
+    private final int glosses;
+    private final Name[] cache;
+
+    private Gazetteer(ByteBuffer buffer){
+      if(buffer.getInt(0) != MAGIC){ throw new IllegalStateException("Not a name gazetteer"); }
+      this.buffer = buffer;
+      this.size = buffer.getInt(4);
+      int numChars = buffer.getInt(8);
+      this.startYears = HEADER_BYTES + 4 * (size + 1);
+      this.endYears = startYears + 4 * size;
+      this.percentUse = endYears + 4 * size;
+      this.percentUseMale = percentUse + 8 * size;
+      this.percentUseFemale = percentUseMale + 8 * size;
+      int genderStart = percentUseFemale + 8 * size;
+      int keyStart = genderStart + size;
+      this.glosses = keyStart + 2 * numChars;
+      if(buffer.limit() != glosses + 2 * numChars){ throw new IllegalStateException("Truncated name gazetteer"); }
+      //(copy the arrays used by lookups)
+      this.offsets = new int[size + 1];
+      this.genders = new byte[size];
+      this.keys = new char[numChars];
+      ByteBuffer view = buffer.duplicate();
+      view.position(HEADER_BYTES);
+      view.asIntBuffer().get(offsets);
+      view.position(genderStart);
+      view.get(genders);
+      view.position(keyStart);
+      view.asCharBuffer().get(keys);
+      this.cache = new Name[size];
+      //(hash the names, into a table at most half full)
+      CharSequence keyChars = CharBuffer.wrap(keys);
+      this.slots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, size)) << 2)];
+      this.mask = slots.length - 1;
+      for(int i=0; i<size; i++){
+        int slot = hash(keyChars, offsets[i], offsets[i + 1]) & mask;
+        while(slots[slot] != 0){ slot = (slot + 1) & mask; }
+        slots[slot] = i + 1;
+      }
+    }
+
+    private static int hash(CharSequence name, int begin, int end){
+      int h = 0;
+      for(int k=begin; k<end; k++){ h = 31*h + Character.toLowerCase(name.charAt(k)); }
+      return h ^ (h >>> 16);
+    }
+
+    /** True if a name (in any case) is the i'th (lowercased) name of the table */
+    private boolean matches(String name, int i){
+      int begin = offsets[i];
+      if(offsets[i + 1] - begin != name.length()){ return false; }
+      for(int k=0; k<name.length(); k++){
+        if(Character.toLowerCase(name.charAt(k)) != keys[begin + k]){ return false; }
+      }
+      return true;
+    }
+
+    /** The index of a name (in any case) in the table, or -1 */
+    private int find(String name){
+      for(int slot = hash(name, 0, name.length()) & mask; slots[slot] != 0; slot = (slot + 1) & mask){
+        if(matches(name, slots[slot] - 1)){ return slots[slot] - 1; }
+      }
+      return -1;
+    }
+
+    private Gender gender(int i){ return GENDERS[genders[i]]; }
+
+    private Name get(int i){
+      Name name = cache[i];
+      if(name == null){
+        //(Name is immutable, so a race here at worst creates an equal object twice)
+        int begin = offsets[i];
+        char[] gloss = new char[offsets[i + 1] - begin];
+        for(int k=0; k<gloss.length; k++){ gloss[k] = buffer.getChar(glosses + 2 * (begin + k)); }
+        name = new Name(new String(gloss), gender(i),
+            buffer.getDouble(percentUseMale + 8 * i), buffer.getDouble(percentUseFemale + 8 * i),
+            buffer.getDouble(percentUse + 8 * i),
+            Pair.make(buffer.getInt(startYears + 4 * i), buffer.getInt(endYears + 4 * i)));
+        cache[i] = name;
+      }
+      return name;
+    }
   }
 
-  private static HashMap<String,Name> names;
+  private static volatile Gazetteer gazetteer = null;
+
+  /**
+   * Load the names from a data directory, if they have not been loaded already.
+   * The binary gazetteer is used if it exists; otherwise baby_names.dat is read.
+   * @param dataPath The data directory
+   */
+  public static synchronized void initialize(String dataPath){
+    if(gazetteer != null){ return; }
+    try {
+      File binary = gazetteerFile(dataPath);
+      gazetteer = new Gazetteer(binary.exists() ? map(binary) : build(IOUtils.slurpFile(textFile(dataPath))));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * True if the names have been loaded
+   */
+  public static boolean isInitialized(){ return gazetteer != null; }
+
+  private static Gazetteer gazetteer(){
+    Gazetteer rtn = gazetteer;
+    if(rtn == null){
+      initialize(CoreferenceTester.dataPath);
+      rtn = gazetteer;
+    }
+    return rtn;
+  }
+
+  /** The text file of names in a data directory */
+  public static File textFile(String dataPath){ return new File(dataPath + "/baby_names.dat"); }
+
+  /** The binary gazetteer in a data directory (it may not exist) */
+  public static File gazetteerFile(String dataPath){ return new File(dataPath + "/baby_names.gazetteer"); }
 
   /**
    * Deterimine whether the given String is a name
    * @param name The name to look up
    * @return true if the supplied name is listed as a name
    */
-  public static boolean isName(String name){ return names.keySet().contains(name.toLowerCase()); }
+  public static boolean isName(String name){ return gazetteer().find(name) >= 0; }
 
   /**
    * Find the name associated with the given String
    * @param name The name to look up
    * @return A Name object representing our knowledge of that name
    */
-  public static Name get(String name){ return names.get(name.toLowerCase()); }
+  public static Name get(String name){
+    Gazetteer names = gazetteer();
+    int i = names.find(name);
+    return i < 0 ? null : names.get(i);
+  }
 
   /**
    * Find the declared gender of a given name
@@ -80,11 +241,9 @@ public class Name {
    * @return The gender of that name, if it exists; alternately Gender.EITHER if the name is not found
    */
   public static Gender gender(String name){
-    if(names.containsKey(name.toLowerCase())){
-      return names.get(name.toLowerCase()).gender;
-    } else {
-      return Gender.NEUTRAL;
-    }
+    Gazetteer names = gazetteer();
+    int i = names.find(name);
+    return i < 0 ? Gender.NEUTRAL : names.gender(i);
   }
 
   /**
@@ -93,71 +252,146 @@ public class Name {
    * @return The gender of that name, if it exists; alternately Gender.EITHER if the name is not found
    */
   public static Gender mostLikelyGender(String name){
-    if(names.containsKey(name.toLowerCase())){
-      return names.get(name.toLowerCase()).mostLikelyGender();
-    } else {
-      return Gender.NEUTRAL;
-    }
+    Name info = get(name);
+    return info == null ? Gender.NEUTRAL : info.mostLikelyGender();
   }
 
+  private static class NameInfo {
+    private int yearsUsed = 0;
+    private Gender gender = Gender.NEUTRAL;
+    private double percentSum = 0.0;
+    private double percentMale = 0.0;
+    private double percentFemale = 0.0;
+    private int startYear = 3000;
+    private int endYear = 0;
+  }
 
-  static {
-    try {
-      //--Read File
-      String[] names = IOUtils.slurpFile(CoreferenceTester.dataPath+"/baby_names.dat").split("\n");
-      HashMap<String,NameInfo> nameInfo = new HashMap<String,NameInfo>();
-      //--Collect Info
-      for(String name : names){
-        //(split info)
-        String[] rawInfo = name.split(" ");
-        //(parse info)
-        int year = Integer.parseInt(rawInfo[0]);
-        String gloss = rawInfo[1];
-        double percent = Double.parseDouble(rawInfo[2]);
-        Gender gender;
-        if(rawInfo[3].equals("girl")){
-          gender = Gender.FEMALE;
-        } else if(rawInfo[3].equals("boy")){
-          gender = Gender.MALE;
-        } else{
-          throw new IllegalArgumentException("Unknown gender: " + rawInfo[3]);
-        }
-        //(ensure map entry)
-        if(!nameInfo.containsKey(gloss)){ nameInfo.put(gloss, new NameInfo()); }
-        //(update entry)
-        NameInfo info = nameInfo.get(gloss);
-        info.yearsUsed += 1;
-        info.percentSum += percent;
-        if(gender == Gender.MALE){
-          info.percentMale += percent;
-        } else {
-          info.percentFemale += percent;
-        }
-
-        info.startYear = Math.min(info.startYear, year);
-        info.endYear = Math.max(info.endYear, year);
-        if(info.gender == Gender.NEUTRAL){
-          info.gender = gender;
-        } else {
-          info.gender = Gender.EITHER;
-        }
+  /**
+   * Build the gazetteer from the contents of baby_names.dat
+   * @param contents The lines of the file, each of the form [year] [name] [percent] [boy|girl]
+   * @return A buffer holding the gazetteer
+   */
+  private static ByteBuffer build(String contents){
+    String[] names = contents.split("\n");
+    HashMap<String,NameInfo> nameInfo = new HashMap<String,NameInfo>();
+    //--Collect Info
+    for(String name : names){
+      //(split info)
+      String[] rawInfo = name.split(" ");
+      //(parse info)
+      int year = Integer.parseInt(rawInfo[0]);
+      String gloss = rawInfo[1];
+      double percent = Double.parseDouble(rawInfo[2]);
+      Gender gender;
+      if(rawInfo[3].equals("girl")){
+        gender = Gender.FEMALE;
+      } else if(rawInfo[3].equals("boy")){
+        gender = Gender.MALE;
+      } else{
+        throw new IllegalArgumentException("Unknown gender: " + rawInfo[3]);
       }
-      //--Build Names
-      Name.names = new HashMap<String, Name>();
-      for(String gloss : nameInfo.keySet()){
-        NameInfo info = nameInfo.get(gloss);
-        Name.names.put(
-            gloss.toLowerCase(),
-            new Name(
-                gloss,
-                info.gender,
-                info.percentMale / (double) info.yearsUsed,
-                info.percentFemale / (double) info.yearsUsed,
-                info.percentSum / (double) info.yearsUsed,
-                Pair.make(info.startYear,info.endYear)) );
+      //(ensure map entry)
+      if(!nameInfo.containsKey(gloss)){ nameInfo.put(gloss, new NameInfo()); }
+      //(update entry)
+      NameInfo info = nameInfo.get(gloss);
+      info.yearsUsed += 1;
+      info.percentSum += percent;
+      if(gender == Gender.MALE){
+        info.percentMale += percent;
+      } else {
+        info.percentFemale += percent;
       }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+
+      info.startYear = Math.min(info.startYear, year);
+      info.endYear = Math.max(info.endYear, year);
+      if(info.gender == Gender.NEUTRAL){
+        info.gender = gender;
+      } else {
+        info.gender = Gender.EITHER;
+      }
+    }
+    //--Sort Names
+    //(by lowercased name; of several spellings of the same lowercased name, the last one seen is kept)
+    TreeMap<String,String> sorted = new TreeMap<String,String>();
+    for(String gloss : nameInfo.keySet()){
+      char[] key = gloss.toCharArray();
+      for(int k=0; k<key.length; k++){ key[k] = Character.toLowerCase(key[k]); }
+      sorted.put(new String(key), gloss);
+    }
+    //--Build Table
+    int size = sorted.size();
+    int numChars = 0;
+    for(String key : sorted.keySet()){ numChars += key.length(); }
+    ByteBuffer buffer = ByteBuffer.allocate(Gazetteer.HEADER_BYTES + 4 * (size + 1) + 8 * size + 24 * size + size + 4 * numChars);
+    buffer.putInt(0, Gazetteer.MAGIC);
+    buffer.putInt(4, size);
+    buffer.putInt(8, numChars);
+    int startYears = Gazetteer.HEADER_BYTES + 4 * (size + 1);
+    int endYears = startYears + 4 * size;
+    int percentUse = endYears + 4 * size;
+    int percentUseMale = percentUse + 8 * size;
+    int percentUseFemale = percentUseMale + 8 * size;
+    int genders = percentUseFemale + 8 * size;
+    int keys = genders + size;
+    int glosses = keys + 2 * numChars;
+    int i = 0;
+    int offset = 0;
+    for(Map.Entry<String,String> entry : sorted.entrySet()){
+      NameInfo info = nameInfo.get(entry.getValue());
+      buffer.putInt(Gazetteer.HEADER_BYTES + 4 * i, offset);
+      buffer.putInt(startYears + 4 * i, info.startYear);
+      buffer.putInt(endYears + 4 * i, info.endYear);
+      buffer.putDouble(percentUse + 8 * i, info.percentSum / (double) info.yearsUsed);
+      buffer.putDouble(percentUseMale + 8 * i, info.percentMale / (double) info.yearsUsed);
+      buffer.putDouble(percentUseFemale + 8 * i, info.percentFemale / (double) info.yearsUsed);
+      buffer.put(genders + i, (byte) info.gender.ordinal());
+      for(int k=0; k<entry.getKey().length(); k++){
+        buffer.putChar(keys + 2 * (offset + k), entry.getKey().charAt(k));
+        buffer.putChar(glosses + 2 * (offset + k), entry.getValue().charAt(k));
+      }
+      offset += entry.getKey().length();
+      i += 1;
+    }
+    buffer.putInt(Gazetteer.HEADER_BYTES + 4 * size, offset);
+    return buffer;
+  }
+
+  private static ByteBuffer map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      raf.close();
     }
   }
+
+  /**
+   * Write the binary gazetteer for a text file of names
+   * @param text The text file (baby_names.dat)
+   * @param binary The file to write
+   * @throws IOException If either file could not be read or written
+   */
+  public static void pack(File text, File binary) throws IOException {
+    ByteBuffer buffer = build(IOUtils.slurpFile(text));
+    RandomAccessFile raf = new RandomAccessFile(binary, "rw");
+    try {
+      raf.setLength(0);
+      raf.getChannel().write(buffer);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Write the binary gazetteer for the names in the data directory
+   * @param args -path [data path]
+   */
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    String dataPath = props.getProperty("path", CoreferenceTester.dataPath);
+    System.out.print("Packing " + textFile(dataPath) + "...");
+    pack(textFile(dataPath), gazetteerFile(dataPath));
+    System.out.println("done (" + gazetteerFile(dataPath).length() + " bytes)");
+  }
 }
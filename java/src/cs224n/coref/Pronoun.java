@@ -187,10 +187,23 @@ public enum Pronoun {
       "yourselves",
       "youse",
   };
-  private static Set<String> pronounSet = new HashSet<String>();
-  private static Set<String> firstSet = new HashSet<String>();
-  private static Set<String> secondSet = new HashSet<String>();
-  private static Set<String> thirdSet = new HashSet<String>();
+  /*
+   * Every known surface form (lowercased) is looked up in a single open addressing
+   * table, hashed and compared ignoring case character by character, so a lookup
+   * creates no objects. Each entry packs the lists the form is in into bit flags,
+   * and holds the enum value of that name, if any.
+   */
+  private static final int KNOWN    = 1;       // (in pronounList)
+  private static final int FIRST    = 1 << 1;  // (in firstPerson)
+  private static final int SECOND   = 1 << 2;  // (in secondPerson)
+  private static final int THIRD    = 1 << 3;  // (in thirdPerson)
+
+  private static final Set<String> pronounSet = new HashSet<String>();
+  private static String[] tableKeys;
+  private static int[] tableFlags;
+  private static Pronoun[] tableValues;
+  private static int tableMask;
+
   /**
    * The known pronouns
    * @return An iterable over the known pronouns
@@ -201,10 +214,11 @@ public enum Pronoun {
 
   /**can only be called on pronoun */
   public static int person(String pronoun) {
-	  if(firstSet.contains(pronoun.toLowerCase())) return 1;
-	  if(secondSet.contains(pronoun.toLowerCase())) return 2;
-	  if(thirdSet.contains(pronoun.toLowerCase())) return 3;
-	  return 0;
+    int flags = flags(pronoun);
+    if((flags & FIRST) != 0) return 1;
+    if((flags & SECOND) != 0) return 2;
+    if((flags & THIRD) != 0) return 3;
+    return 0;
   }
   
   /**
@@ -213,14 +227,43 @@ public enum Pronoun {
    * @return true if the String is a pronoun
    */
   public static boolean isSomePronoun(String cand){
-    return pronounSet.contains(cand.toLowerCase());
+    return (flags(cand) & KNOWN) != 0;
   }
 
   public static Pronoun valueOrNull(String value){
-    for(Pronoun p : values()){
-      if(p.name().equalsIgnoreCase(value)){ return p; }
+    if(value == null){ return null; }
+    int slot = find(value);
+    return slot < 0 ? null : tableValues[slot];
+  }
+
+  private static int flags(String word){
+    int slot = find(word);
+    return slot < 0 ? 0 : tableFlags[slot];
+  }
+
+  private static int hashIgnoreCase(String word){
+    int h = 0;
+    for(int i=0; i<word.length(); i++){ h = 31*h + Character.toLowerCase(Character.toUpperCase(word.charAt(i))); }
+    return h ^ (h >>> 16);
+  }
+
+  private static int find(String word){
+    for(int slot = hashIgnoreCase(word) & tableMask; tableKeys[slot] != null; slot = (slot + 1) & tableMask){
+      String key = tableKeys[slot];
+      if(key.length() == word.length() && key.regionMatches(true, 0, word, 0, word.length())){ return slot; }
     }
-    return null;
+    return -1;
+  }
+
+  private static int insert(String word){
+    int slot = hashIgnoreCase(word) & tableMask;
+    while(tableKeys[slot] != null && !tableKeys[slot].equals(word)){ slot = (slot + 1) & tableMask; }
+    tableKeys[slot] = word;
+    return slot;
+  }
+
+  private static void addAll(String[] words, int flag){
+    for(String word : words){ tableFlags[insert(word)] |= flag; }
   }
 
   static {
@@ -228,15 +271,20 @@ public enum Pronoun {
       if(pronounSet.contains(pronoun)){ throw new IllegalStateException("Duplicate pronoun: " + pronoun); }
       pronounSet.add(pronoun);
     }
-    for(String pronoun: firstPerson) {
-    	firstSet.add(pronoun);
-    }
-    for(String pronoun: secondPerson) {
-    	secondSet.add(pronoun);
-    }
-    for(String pronoun: thirdPerson) {
-    	thirdSet.add(pronoun);
+    //(size the table to at most half full)
+    int entries = pronounList.length + firstPerson.length + secondPerson.length + thirdPerson.length + values().length;
+    int size = Integer.highestOneBit(entries) << 2;
+    tableKeys = new String[size];
+    tableFlags = new int[size];
+    tableValues = new Pronoun[size];
+    tableMask = size - 1;
+    //(fill the table)
+    addAll(pronounList, KNOWN);
+    addAll(firstPerson, FIRST);
+    addAll(secondPerson, SECOND);
+    addAll(thirdPerson, THIRD);
+    for(Pronoun p : values()){
+      tableValues[insert(p.name().toLowerCase())] = p;
     }
-
   }
 }
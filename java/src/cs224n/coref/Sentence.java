@@ -4,6 +4,10 @@ import cs224n.ling.Tree;
 import cs224n.util.Decodable;
 import cs224n.util.Pair;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.*;
 
@@ -11,16 +15,28 @@ import java.util.*;
  * Denotes a sentence. A document is a collection of sentences; each mention is
  * marked as part of both a document and a sentence.
  *
+ * The words, lemmas and tags of the sentence are stored as parallel columns of
+ * ids in the SymbolTable; the List fields are read-only views of these columns.
+ *
  * @author Gabor Angeli (angeli at cs.stanford)
  */
 public class Sentence implements Serializable, Decodable {
   private static final long serialVersionUID = 1L;
 
+  //(tag ids for the token utility methods)
+  private static final int NN = SymbolTable.id("NN");
+  private static final int NNS = SymbolTable.id("NNS");
+  private static final int NNP = SymbolTable.id("NNP");
+  private static final int NNPS = SymbolTable.id("NNPS");
+  private static final int NO_SPEAKER = SymbolTable.id("");
+  private static final int PER0 = SymbolTable.id("PER0");
+
   /**
    * A token of the sentence, encapsulating useful information
    * about a particular index in the sentence.
    */
   public class Token implements Serializable{
+    private static final long serialVersionUID = 4824677797921835288L;  // (as computed before ids were added)
     private int index;
     private Token(int index){
       this.index = index;
@@ -30,31 +46,49 @@ public class Sentence implements Serializable, Decodable {
      * The word associated with this token
      * @return A String word
      */
-    public String word(){ return words.get(index); }
+    public String word(){ return SymbolTable.symbol(wordIds[index]); }
 
     /**
      * The lemma ( http://en.wikipedia.org/wiki/Lemma_(morphology) ) of a word
      * @return The String lemma
      */
-    public String lemma(){ return lemmas.get(index); }
+    public String lemma(){ return SymbolTable.symbol(lemmaIds[index]); }
 
     /**
      * The part of speech tag of the token
      * @return The POS tag, as a String
      */
-    public String posTag(){ return posTags.get(index); }
+    public String posTag(){ return SymbolTable.symbol(posTagIds[index]); }
 
     /**
      * The Named Entity of the token
      * @return The NER tag, as a String
      */
-    public String nerTag(){ return nerTags.get(index); }
+    public String nerTag(){ return SymbolTable.symbol(nerTagIds[index]); }
 
     /**
      * The speaker of this token (for example, whether it is in quotes)
      * @return The speaker, as a String
      */
-    public String speaker(){ return speakersOfWord.get(index); }
+    public String speaker(){ return SymbolTable.symbol(speakerIds[index]); }
+
+    /**
+     * The word associated with this token, as an id in the SymbolTable
+     * @return The id of the word
+     */
+    public int wordId(){ return wordIds[index]; }
+
+    /**
+     * The part of speech tag of the token, as an id in the SymbolTable
+     * @return The id of the POS tag
+     */
+    public int posTagId(){ return posTagIds[index]; }
+
+    /**
+     * The Named Entity of the token, as an id in the SymbolTable
+     * @return The id of the NER tag
+     */
+    public int nerTagId(){ return nerTagIds[index]; }
 
     // -- Utility Methods --
     /**
@@ -62,7 +96,8 @@ public class Sentence implements Serializable, Decodable {
      * @return True if this token is inside quotes
      */
     public boolean isQuoted(){
-      return !speaker().equals("") && !speaker().equals("PER0");
+      int speaker = speakerIds[index];
+      return speaker != NO_SPEAKER && speaker != PER0;
     }
 
     /**
@@ -70,7 +105,8 @@ public class Sentence implements Serializable, Decodable {
      * @return true if the token is a noun, and it is a plural noun
      */
     public boolean isPluralNoun(){
-      return isNoun() && (posTag().equals("NNS") || posTag().equals("NNPS"));
+      int tag = posTagIds[index];
+      return tag == NNS || tag == NNPS;
     }
 
     /**
@@ -78,7 +114,8 @@ public class Sentence implements Serializable, Decodable {
      * @return true if the token is a noun, and it is a proper noun
      */
     public boolean isProperNoun(){
-      return isNoun() && (posTag().equals("NNP") || posTag().equals("NNPS"));
+      int tag = posTagIds[index];
+      return tag == NNP || tag == NNPS;
     }
 
     /**
@@ -86,11 +123,32 @@ public class Sentence implements Serializable, Decodable {
      * @return true if the token is a noun
      */
     public boolean isNoun(){
-      String tag = posTag();
-      return tag.equals("NN") || tag.equals("NNS") || tag.equals("NNP") || tag.equals("NNPS");
+      int tag = posTagIds[index];
+      return tag == NN || tag == NNS || tag == NNP || tag == NNPS;
     }
   }
 
+  /**
+   * A read-only view of a column of ids, as the Strings they denote
+   */
+  private static class Column extends AbstractList<String> implements RandomAccess {
+    private final int[] ids;
+    private Column(int[] ids){ this.ids = ids; }
+    @Override
+    public String get(int index){ return SymbolTable.symbol(ids[index]); }
+    @Override
+    public int size(){ return ids.length; }
+  }
+
+  /**
+   * The columns of the sentence, as ids in the SymbolTable
+   */
+  private final int[] wordIds;
+  private final int[] lemmaIds;
+  private final int[] posTagIds;
+  private final int[] nerTagIds;
+  private final int[] speakerIds;
+
   /**
    * The words in this sentence
    */
@@ -127,31 +185,62 @@ public class Sentence implements Serializable, Decodable {
                   List<String> namedEntities,
                   List<String> speakers,
                   Tree<String> parse){
+    this(ids(words), ids(lemmas), ids(posTags), ids(namedEntities), ids(speakers), parse);
+  }
+
+  /**
+   * Create a sentence from columns of ids in the SymbolTable.
+   * The arrays are not copied, and should not be modified afterwards.
+   */
+  public Sentence(int[] words,
+                  int[] lemmas,
+                  int[] posTags,
+                  int[] namedEntities,
+                  int[] speakers,
+                  Tree<String> parse){
     //--Error Checks
-    int length = words.size();
-    if(lemmas.size() != length){ throw new IllegalArgumentException("Lemma size doesn't agree: " + lemmas.size()); }
-    if(posTags.size() != length){ throw new IllegalArgumentException("POS tags size doesn't agree: " + posTags.size()); }
-    if(namedEntities.size() != length){ throw new IllegalArgumentException("NER size doesn't agree: " + namedEntities.size()); }
-    if(speakers.size() != length){ throw new IllegalArgumentException("Speakers size doesn't agree: " + speakers.size()); }
+    int length = words.length;
+    if(lemmas.length != length){ throw new IllegalArgumentException("Lemma size doesn't agree: " + lemmas.length); }
+    if(posTags.length != length){ throw new IllegalArgumentException("POS tags size doesn't agree: " + posTags.length); }
+    if(namedEntities.length != length){ throw new IllegalArgumentException("NER size doesn't agree: " + namedEntities.length); }
+    if(speakers.length != length){ throw new IllegalArgumentException("Speakers size doesn't agree: " + speakers.length); }
     //--Copy Variables
-    this.words = words;
-    this.lemmas = lemmas;
-    this.posTags = posTags;
-    this.nerTags = namedEntities;
-    this.speakersOfWord = speakers;
+    this.wordIds = words;
+    this.lemmaIds = lemmas;
+    this.posTagIds = posTags;
+    this.nerTagIds = namedEntities;
+    this.speakerIds = speakers;
+    this.words = new Column(words);
+    this.lemmas = new Column(lemmas);
+    this.posTags = new Column(posTags);
+    this.nerTags = new Column(namedEntities);
+    this.speakersOfWord = new Column(speakers);
     this.parse = parse;
     //--Create Tokens
     this.tokens = new ArrayList<Token>();
-    for(int i=0; i<words.size(); i++){
+    for(int i=0; i<length; i++){
       tokens.add(new Token(i));
     }
   }
 
+  private static int[] ids(List<String> column){
+    int[] ids = new int[column.size()];
+    for(int i=0; i<ids.length; i++){ ids[i] = SymbolTable.id(column.get(i)); }
+    return ids;
+  }
+
   /**
    * The length of the sentence
    * @return The length of the sentence
    */
-  public int length(){ return words.size(); }
+  public int length(){ return wordIds.length; }
+
+  /**
+   * The id in the SymbolTable of the word at an index
+   * @param index The index of the word in the sentence
+   * @return The id of the word
+   */
+  public int wordId(int index){ return wordIds[index]; }
   public String gloss(){
     StringBuilder b = new StringBuilder();
     for(int i=0; i<words.size()-1; i++){
@@ -217,6 +306,45 @@ public class Sentence implements Serializable, Decodable {
   //--------------
   // SERIALIZATION
   //--------------
+  //(Java serialization writes the columns as lists of Strings, as before they were stored as ids;
+  // ids are only meaningful within one SymbolTable)
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("words", List.class),
+      new ObjectStreamField("lemmas", List.class),
+      new ObjectStreamField("posTags", List.class),
+      new ObjectStreamField("nerTags", List.class),
+      new ObjectStreamField("speakersOfWord", List.class),
+      new ObjectStreamField("parse", Tree.class),
+      new ObjectStreamField("tokens", List.class)
+  };
+  private transient Sentence deserialized;
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("words", new ArrayList<String>(words));
+    fields.put("lemmas", new ArrayList<String>(lemmas));
+    fields.put("posTags", new ArrayList<String>(posTags));
+    fields.put("nerTags", new ArrayList<String>(nerTags));
+    fields.put("speakersOfWord", new ArrayList<String>(speakersOfWord));
+    fields.put("parse", parse);
+    fields.put("tokens", tokens);
+    out.writeFields();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    deserialized = new Sentence(
+        (List<String>) fields.get("words", null),
+        (List<String>) fields.get("lemmas", null),
+        (List<String>) fields.get("posTags", null),
+        (List<String>) fields.get("nerTags", null),
+        (List<String>) fields.get("speakersOfWord", null),
+        (Tree<String>) fields.get("parse", null));
+  }
+
+  private Object readResolve(){ return deserialized; }
+
   private static final String DIV = "" + (char) 0x04;
 
   public String encode() {
@@ -0,0 +1,65 @@
+package cs224n.coref;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A corpus-wide table of interned Strings (words, for instance), each assigned a
+ * small integer id the first time it is seen. Two Strings have the same id if and
+ * only if they are equal, so text can be compared as arrays of ids rather than as Strings.
+ *
+ * Sentences store their words, lemmas and tags as columns of these ids, so each
+ * distinct String is kept once however many documents are loaded.
+ * The table is shared by every document, and may be used from several threads;
+ * ids are never reassigned or removed.
+ */
+public class SymbolTable {
+  /**
+   * The id of null
+   */
+  public static final int NULL = -1;
+
+  private static final ConcurrentHashMap<String,Integer> ids = new ConcurrentHashMap<String,Integer>();
+  private static volatile String[] symbols = new String[1024];
+  private static int size = 0;
+
+  private SymbolTable(){}
+
+  /**
+   * The id of a String, assigning it a new one if it has not been seen before
+   * @param symbol The String to look up
+   * @return The id of the String, between 0 and size()-1, or NULL if it is null
+   */
+  public static int id(String symbol){
+    if(symbol == null){ return NULL; }
+    Integer id = ids.get(symbol);
+    if(id != null){ return id; }
+    return add(symbol);
+  }
+
+  private static synchronized int add(String symbol){
+    Integer id = ids.get(symbol);
+    if(id != null){ return id; }  // (added by another thread)
+    String[] current = symbols;
+    if(size == current.length){
+      current = Arrays.copyOf(current, 2 * current.length);
+    }
+    current[size] = symbol;
+    symbols = current;  // (publishes the new entry before its id)
+    ids.put(symbol, size);
+    return size++;
+  }
+
+  /**
+   * The String with a given id
+   * @param id An id returned by id()
+   * @return The String it was assigned to
+   */
+  public static String symbol(int id){ return id == NULL ? null : symbols[id]; }
+
+  /**
+   * The number of Strings seen so far
+   * @return The number of ids assigned
+   */
+  public static synchronized int size(){ return size; }
+}
@@ -7,28 +7,38 @@ import cs224n.util.Pair;
  */
 public class Util {
 
+  /*
+   * The possible answers of the agreement checks; Pairs are immutable, so these are shared
+   * rather than allocated on every call
+   */
+  private static final Pair<Boolean,Boolean> UNKNOWN = Pair.make(false, false);
+  private static final Pair<Boolean,Boolean> AGREE = Pair.make(true, true);
+  private static final Pair<Boolean,Boolean> DISAGREE = Pair.make(true, false);
+
+  private static Pair<Boolean,Boolean> known(boolean agree){ return agree ? AGREE : DISAGREE; }
+
   public static Pair<Boolean,Boolean> haveGenderAndAreSameGender(Mention a, Mention b){
     //(names)
-    Name nameA = Name.get(a.gloss());
-    Name nameB = Name.get(b.gloss());
+    Name nameA = a.features().name;
+    Name nameB = b.features().name;
     //(pronouns)
-    Pronoun proA = Pronoun.valueOrNull(a.gloss().toUpperCase().replaceAll(" ", "_"));
-    Pronoun proB = Pronoun.valueOrNull(b.gloss().toUpperCase().replaceAll(" ", "_"));
+    Pronoun proA = a.features().pronoun;
+    Pronoun proB = b.features().pronoun;
     //(error conditions)
-    if(nameA == null && proA == null){ return Pair.make(false, false); }
-    if(nameB == null && proB == null){ return Pair.make(false, false); }
+    if(nameA == null && proA == null){ return UNKNOWN; }
+    if(nameB == null && proB == null){ return UNKNOWN; }
     //(compare genders)
     Gender genderA = proA == null ? nameA.gender : proA.gender;
     Gender genderB = proB == null ? nameB.gender : proB.gender;
-    return Pair.make( true, genderA.isCompatible(genderB) );
+    return known(genderA.isCompatible(genderB));
   }
 
   public static Pair<Boolean,Boolean> haveGenderAndAreSameGender(Mention a, Entity entity){
     for(Mention m : entity.mentions){
       Pair<Boolean, Boolean> pair = haveGenderAndAreSameGender(a, m);
-      if(pair.getFirst()){ return Pair.make(true, pair.getSecond()); }
+      if(pair.getFirst()){ return pair; }
     }
-    return Pair.make(false, false);
+    return UNKNOWN;
   }
 
   public static Pair<Boolean,Boolean> haveNumberAndAreSameNumber(Mention a, Mention b){
@@ -36,23 +46,23 @@ public class Util {
     boolean nounA = a.headToken().isNoun();
     boolean nounB = b.headToken().isNoun();
     //(pronouns)
-    Pronoun proA = Pronoun.valueOrNull(a.gloss().toUpperCase().replaceAll(" ","_"));
-    Pronoun proB = Pronoun.valueOrNull(b.gloss().toUpperCase().replaceAll(" ","_"));
+    Pronoun proA = a.features().pronoun;
+    Pronoun proB = b.features().pronoun;
     //(error conditions)
-    if(!nounA && proA == null){ return Pair.make(false, false); }
-    if(!nounB && proB == null){ return Pair.make(false, false); }
+    if(!nounA && proA == null){ return UNKNOWN; }
+    if(!nounB && proB == null){ return UNKNOWN; }
     //(compare genders)
     boolean pluralA = proA == null ? a.headToken().isPluralNoun() : proA.plural;
     boolean pluralB = proB == null ? b.headToken().isPluralNoun() : proB.plural;
-    return Pair.make( true, pluralA == pluralB );
+    return known(pluralA == pluralB);
   }
 
   public static Pair<Boolean,Boolean> haveNumberAndAreSameNumber(Mention a, Entity entity){
     for(Mention m : entity.mentions){
       Pair<Boolean, Boolean> pair = haveNumberAndAreSameNumber(a, m);
-      if(pair.getFirst()){ return Pair.make(true, pair.getSecond()); }
+      if(pair.getFirst()){ return pair; }
     }
-    return Pair.make(false, false);
+    return UNKNOWN;
   }
 
 }
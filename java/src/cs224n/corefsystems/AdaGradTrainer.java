@@ -0,0 +1,266 @@
+package cs224n.corefsystems;
+
+import edu.stanford.nlp.stats.Counter;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A binary logistic regression classifier trained online, by mini-batch AdaGrad
+ * (Duchi et al. 2011) with L2 regularization, for training sets too large to hold in memory.
+ *
+ * Datums are fed in one at a time with add(), typically straight from feature extraction.
+ * Features are indexed the first time they are seen, and datums are grouped into
+ * mini-batches which are trained on as soon as they are full; only the weights and the
+ * batches in flight are kept. An epoch is a pass over the data, ended by finishEpoch().
+ *
+ * With more than one thread, batches are trained on concurrently, updating the shared
+ * weights without locks ("Hogwild!", Recht et al. 2011). Concurrent updates to the same
+ * weight may occasionally overwrite each other; as datums are sparse this costs little,
+ * but the weights learned then depend on the timing of the threads. With one thread,
+ * training is deterministic.
+ *
+ * Weights are stored in fixed size pages, so that new features can be added by the
+ * thread calling add() while batches are being trained on other threads.
+ * The methods of this class must all be called from the same thread.
+ */
+public class AdaGradTrainer<F> {
+  private static final int PAGE_BITS = 10;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+  private static final int BIAS = 0;  // (the id of the bias; it is active in every datum)
+
+  private final int batchSize;
+  private final double learningRate;
+  private final double l2;
+  private final int maxInFlight;
+  private final ExecutorService pool;
+
+  private final Map<F,Integer> index = new HashMap<F,Integer>();
+  private final List<F> features = new ArrayList<F>();
+  private volatile double[][] weights = new double[0][];
+  private volatile double[][] squaredGradients = new double[0][];
+
+  private Batch batch;
+  private final LinkedList<Future<Double>> pending = new LinkedList<Future<Double>>();
+  private double epochLoss = 0.0;
+  private int epochDatums = 0;
+
+  private final ThreadLocal<Gradient> gradients = new ThreadLocal<Gradient>(){
+    protected Gradient initialValue(){ return new Gradient(); }
+  };
+
+  /**
+   * Create a trainer
+   * @param threads The number of threads to train batches on
+   * @param batchSize The number of datums in a mini-batch
+   * @param learningRate The AdaGrad learning rate
+   * @param l2 The strength of the L2 regularization of the weights (not of the bias)
+   */
+  public AdaGradTrainer(int threads, int batchSize, double learningRate, double l2){
+    if(threads <= 0){ throw new IllegalArgumentException("Invalid number of threads: " + threads); }
+    if(batchSize <= 0){ throw new IllegalArgumentException("Invalid batch size: " + batchSize); }
+    this.batchSize = batchSize;
+    this.learningRate = learningRate;
+    this.l2 = l2;
+    this.maxInFlight = 2 * threads;
+    this.pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    features.add(null);  // (the bias)
+    ensureCapacity(1);
+    this.batch = new Batch();
+  }
+
+  /**
+   * A mini-batch of datums, with their features as ids
+   */
+  private class Batch implements Callable<Double> {
+    private int size = 0;
+    private int[] start = new int[batchSize + 1];
+    private int[] ids = new int[16 * batchSize];
+    private double[] values = new double[16 * batchSize];
+    private final boolean[] labels = new boolean[batchSize];
+    private int numFeatures;
+
+    private void add(Counter<F> datum, boolean label){
+      int end = start[size];
+      if(ids.length < end + datum.size()){
+        ids = Arrays.copyOf(ids, Math.max(end + datum.size(), 2 * ids.length));
+        values = Arrays.copyOf(values, ids.length);
+      }
+      for(F feature : datum.keySet()){
+        ids[end] = indexOf(feature);
+        values[end] = datum.getCount(feature);
+        end += 1;
+      }
+      labels[size] = label;
+      size += 1;
+      start[size] = end;
+      numFeatures = features.size();
+    }
+
+    public Double call(){ return train(this); }
+  }
+
+  /**
+   * A gradient buffer, reused by each thread from batch to batch
+   */
+  private static class Gradient {
+    private double[] values = new double[0];
+    private boolean[] touched = new boolean[0];
+    private int[] active = new int[0];
+    private void ensureCapacity(int numFeatures){
+      if(values.length < numFeatures){
+        int size = Math.max(numFeatures, 2 * values.length);
+        values = new double[size];
+        touched = new boolean[size];
+        active = new int[size];
+      }
+    }
+  }
+
+  private int indexOf(F feature){
+    Integer id = index.get(feature);
+    if(id == null){
+      id = features.size();
+      index.put(feature, id);
+      features.add(feature);
+      ensureCapacity(features.size());
+    }
+    return id;
+  }
+
+  private void ensureCapacity(int numFeatures){
+    int pages = (numFeatures + PAGE_SIZE - 1) >>> PAGE_BITS;
+    if(pages > weights.length){
+      //(the existing pages are shared with the new arrays, so updates in flight are not lost)
+      double[][] newWeights = Arrays.copyOf(weights, pages);
+      double[][] newSquared = Arrays.copyOf(squaredGradients, pages);
+      for(int p=weights.length; p<pages; p++){
+        newWeights[p] = new double[PAGE_SIZE];
+        newSquared[p] = new double[PAGE_SIZE];
+      }
+      this.squaredGradients = newSquared;
+      this.weights = newWeights;
+    }
+  }
+
+  /**
+   * Add a training datum; it is trained on once its mini-batch is full.
+   * This may block until an earlier batch has been trained on.
+   * @param datum The features of the datum, with their values
+   * @param label The label of the datum
+   */
+  public void add(Counter<F> datum, boolean label){
+    batch.add(datum, label);
+    if(batch.size == batchSize){ submit(); }
+  }
+
+  private void submit(){
+    if(batch.size == 0){ return; }
+    if(pool == null){
+      //(case: single threaded)
+      collect(train(batch), batch.size);
+    } else {
+      //(case: multithreaded)
+      while(pending.size() >= maxInFlight){ collectFirst(); }
+      pending.add(pool.submit(batch));
+      epochDatums += batch.size;
+    }
+    batch = new Batch();
+  }
+
+  private void collect(double loss, int datums){
+    epochLoss += loss;
+    epochDatums += datums;
+  }
+
+  private void collectFirst(){
+    try {
+      epochLoss += pending.removeFirst().get();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Train on any remaining datums, and wait for every batch to finish
+   * @return The average log loss of the datums added since the last epoch,
+   *         each computed just before the datum's batch was trained on
+   */
+  public double finishEpoch(){
+    submit();
+    while(!pending.isEmpty()){ collectFirst(); }
+    double rtn = epochDatums == 0 ? 0.0 : epochLoss / epochDatums;
+    epochLoss = 0.0;
+    epochDatums = 0;
+    return rtn;
+  }
+
+  /**
+   * Stop the training threads; the weights can still be read
+   */
+  public void close(){
+    if(pool != null){ pool.shutdownNow(); }
+  }
+
+  /*
+   * Take an AdaGrad step on a batch, and return the total log loss of its datums
+   */
+  private double train(Batch batch){
+    double[][] w = this.weights;
+    double[][] sq = this.squaredGradients;
+    Gradient gradient = gradients.get();
+    gradient.ensureCapacity(batch.numFeatures);
+    double[] g = gradient.values;
+    int numActive = 0;
+    double loss = 0.0;
+    //--Gradient
+    for(int d=0; d<batch.size; d++){
+      double margin = w[0][BIAS];
+      for(int k=batch.start[d]; k<batch.start[d+1]; k++){
+        int id = batch.ids[k];
+        margin += w[id >>> PAGE_BITS][id & PAGE_MASK] * batch.values[k];
+      }
+      double y = batch.labels[d] ? 1.0 : 0.0;
+      double error = 1.0 / (1.0 + Math.exp(-margin)) - y;
+      loss += softplus(batch.labels[d] ? -margin : margin);
+      g[BIAS] += error;
+      if(!gradient.touched[BIAS]){ gradient.touched[BIAS] = true; gradient.active[numActive++] = BIAS; }
+      for(int k=batch.start[d]; k<batch.start[d+1]; k++){
+        int id = batch.ids[k];
+        g[id] += error * batch.values[k];
+        if(!gradient.touched[id]){ gradient.touched[id] = true; gradient.active[numActive++] = id; }
+      }
+    }
+    //--Update
+    for(int a=0; a<numActive; a++){
+      int id = gradient.active[a];
+      double[] wPage = w[id >>> PAGE_BITS];
+      double[] sqPage = sq[id >>> PAGE_BITS];
+      int offset = id & PAGE_MASK;
+      double grad = g[id] / batch.size + (id == BIAS ? 0.0 : l2 * wPage[offset]);
+      sqPage[offset] += grad * grad;
+      if(sqPage[offset] > 0.0){ wPage[offset] -= learningRate * grad / Math.sqrt(sqPage[offset]); }
+      g[id] = 0.0;
+      gradient.touched[id] = false;
+    }
+    return loss;
+  }
+
+  /** log(1 + exp(x)), without overflow */
+  private static double softplus(double x){
+    return Math.max(x, 0.0) + Math.log1p(Math.exp(-Math.abs(x)));
+  }
+
+  /** The number of features seen so far */
+  public int numFeatures(){ return features.size() - 1; }
+  /** The i'th feature seen */
+  public F feature(int i){ return features.get(i + 1); }
+  /** The weight of the i'th feature seen */
+  public double weight(int i){ return weights[(i + 1) >>> PAGE_BITS][(i + 1) & PAGE_MASK]; }
+  /** The bias; the classifier predicts true when the bias plus the weights of a datum's features exceeds 0 */
+  public double bias(){ return weights[0][BIAS]; }
+}
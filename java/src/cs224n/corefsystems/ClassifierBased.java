@@ -6,6 +6,7 @@ import edu.stanford.nlp.classify.LinearClassifier;
 import edu.stanford.nlp.classify.LinearClassifierFactory;
 import edu.stanford.nlp.classify.RVFDataset;
 import edu.stanford.nlp.ling.RVFDatum;
+import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.util.Triple;
 import edu.stanford.nlp.util.logging.RedwoodConfiguration;
@@ -13,13 +14,14 @@ import edu.stanford.nlp.util.logging.StanfordRedwoodConfiguration;
 
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static edu.stanford.nlp.util.logging.Redwood.Util.*;
 
 /**
  * @author Gabor Angeli (angeli at cs.stanford)
  */
-public class ClassifierBased implements CoreferenceSystem {
+public class ClassifierBased implements CoreferenceSystem, CoreferenceSystem.NotThreadSafe, CoreferenceSystem.Configurable, CoreferenceSystem.Reporting {
 
 	private static <E> Set<E> mkSet(E[] array){
 		Set<E> rtn = new HashSet<E>();
@@ -47,87 +49,198 @@ public class ClassifierBased implements CoreferenceSystem {
 	});	
 
 
+	/*
+	 * Which earlier mentions are considered as antecedents, in both training and
+	 * testing, by default; see configure(). Integer.MAX_VALUE and false consider
+	 * every earlier mention.
+	 */
+	private static final int MAX_SENTENCE_DISTANCE = Integer.MAX_VALUE;
+	private static final int MAX_MENTION_DISTANCE = Integer.MAX_VALUE;
+	private static final boolean FILTER_NUMBER = false;
+	private static final boolean FILTER_GENDER = false;
+
+	public CandidateGenerator candidates = new CandidateGenerator(MAX_SENTENCE_DISTANCE, MAX_MENTION_DISTANCE, FILTER_NUMBER, FILTER_GENDER);
+
 	private LinearClassifier<Boolean,Feature> classifier;
+	private CompiledClassifier compiled;
 
 	public ClassifierBased(){
 		StanfordRedwoodConfiguration.setup();
 		RedwoodConfiguration.current().collapseApproximate().apply();
 	}
 
+	/**
+	 * Choose the trainer: -trainer [batch|adagrad], and for adagrad,
+	 * -trainerEpochs [epochs] and -trainerThreads [threads]; and the number of
+	 * feature extraction threads, -extractionThreads [threads]; and the candidate
+	 * antecedents, -maxSentenceDistance [sentences], -maxMentionDistance [mentions],
+	 * -filterNumber [true|false] and -filterGender [true|false].
+	 * By default, batch training extracts on every processor, and adagrad gives half
+	 * the processors to extraction and the rest to the trainer.
+	 * @param props The properties the tester was run with
+	 */
+	public void configure(Properties props){
+		String trainer = props.getProperty("trainer", "batch");
+		if(trainer.equalsIgnoreCase("adagrad")){
+			onlineTrainer = true;
+		} else if(trainer.equalsIgnoreCase("batch")){
+			onlineTrainer = false;
+		} else {
+			throw new IllegalArgumentException("Unknown trainer (expected batch or adagrad): " + trainer);
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		int defaultExtraction = onlineTrainer ? Math.max(1, processors / 2) : processors;
+		trainerEpochs = Integer.parseInt(props.getProperty("trainerEpochs", Integer.toString(trainerEpochs)));
+		extractionThreads = Integer.parseInt(props.getProperty("extractionThreads", Integer.toString(defaultExtraction)));
+		trainerThreads = Integer.parseInt(props.getProperty("trainerThreads", Integer.toString(Math.max(1, processors - extractionThreads))));
+		if(extractionThreads <= 0){ throw new IllegalArgumentException("Invalid number of extraction threads: " + extractionThreads); }
+		if(trainerThreads <= 0){ throw new IllegalArgumentException("Invalid number of trainer threads: " + trainerThreads); }
+		candidates = new CandidateGenerator(
+				Integer.parseInt(props.getProperty("maxSentenceDistance", Integer.toString(MAX_SENTENCE_DISTANCE))),
+				Integer.parseInt(props.getProperty("maxMentionDistance", Integer.toString(MAX_MENTION_DISTANCE))),
+				Boolean.parseBoolean(props.getProperty("filterNumber", Boolean.toString(FILTER_NUMBER))),
+				Boolean.parseBoolean(props.getProperty("filterGender", Boolean.toString(FILTER_GENDER))));
+	}
+
+	/**
+	 * The candidate antecedents let through and pruned since the last report
+	 * (or since training ended)
+	 * @return A summary of the candidate generator's counts, which are then reset
+	 */
+	public String report(){
+		String summary = "Candidate antecedents: " + candidates.summary();
+		candidates.resetCounts();
+		return summary;
+	}
+
+	/**
+	 * The value a feature template takes on a pair of mentions: 1 or 0 for an
+	 * Indicator feature, or the value of an IntIndicator feature.
+	 * @param clazz The feature template
+	 * @param onPrix The first mention (referred to as m_i in the handout)
+	 * @param candidate The second mention (referred to as m_j in the handout)
+	 * @return The value of the feature
+	 */
+	private static int featureValue(Class<?> clazz, Mention onPrix, Mention candidate){
+		MentionFeatures fixed = onPrix.features();
+		MentionFeatures cand = candidate.features();
+		if(clazz.equals(Feature.ExactMatch.class)){
+			//(exact string match)
+			return bit(onPrix.sameText(candidate));
+		} else if(clazz.equals(Feature.FixedIsPronoun.class)) {
+			return bit(fixed.isPronoun);
+		} else if(clazz.equals(Feature.CandIsPronoun.class)) {
+			return bit(cand.isPronoun);
+		} else if(clazz.equals(Feature.WordDist.class)) {
+			int wordDist = Math.abs(onPrix.beginIndexInclusive - candidate.endIndexExclusive);
+			if(wordDist > 20) 	return 4;
+			if(wordDist > 10) 	return 3;
+			if(wordDist > 5) 	return 2;
+			if(wordDist > 2) 	return 1;
+			return 0;
+
+		} else if(clazz.equals(Feature.CandIsName.class)) {
+			return bit(cand.isName());
+		} else if(clazz.equals(Feature.FixedIsName.class)) {
+			return bit(fixed.isName());
+		} else if(clazz.equals(Feature.FixedIsDef.class)) {
+			return bit(fixed.isDefinite);
+		}else if(clazz.equals(Feature.CandIsDef.class)) {
+			return bit(cand.isDefinite);
+		}else if(clazz.equals(Feature.GenderAgreement.class)) {
+			Gender candGender = null;
+			if(cand.isName()) {
+				candGender = cand.nameGender;
+			} else if(cand.isPronoun && cand.pronoun != null) {
+				candGender = cand.pronoun.gender;
+			}
+			Gender fixedGender = null;
+			if(fixed.isName()) {
+				fixedGender = fixed.nameGender;
+			} else if(fixed.isPronoun && fixed.pronoun != null) {
+				fixedGender = fixed.pronoun.gender;
+			}
+			if(candGender==null || fixedGender == null)
+				return bit(true);
+			//if(candGender == fixedGender)
+			//	System.out.println("Same gender: " + candidate.gloss() + ", " + onPrix.gloss());
+			return bit(candGender != fixedGender);
+		} else if(clazz.equals(Feature.PersonAgreement.class)) {
+			int person1 = cand.isPronoun ? cand.person : -1;
+			int person2 = fixed.isPronoun ? fixed.person : -1;
+			return bit((person1!=-1 && person2!=-1 && person1==person2));
+		} else if(clazz.equals(Feature.PersonCand.class)) {
+			return cand.person;
+		} else if(clazz.equals(Feature.PersonFixed.class)) {
+			return fixed.person;
+		} else if(clazz.equals(Feature.HeadMatch.class)) {
+			return bit(cand.headWordId == fixed.headWordId || cand.headWord.equalsIgnoreCase(fixed.headWord));
+		}
+		else {
+			throw new IllegalArgumentException("Unregistered feature: " + clazz);
+		}
+	}
+
+	private static int bit(boolean value){ return value ? 1 : 0; }
+
+	/**
+	 * The feature of a given template taking a given value (as returned by featureValue())
+	 */
+	private static Feature makeFeature(Class<?> clazz, int value){
+		if(clazz.equals(Feature.ExactMatch.class)){
+			return new Feature.ExactMatch(value != 0);
+		} else if(clazz.equals(Feature.FixedIsPronoun.class)) {
+			return new Feature.FixedIsPronoun(value != 0);
+		} else if(clazz.equals(Feature.CandIsPronoun.class)) {
+			return new Feature.CandIsPronoun(value != 0);
+		} else if(clazz.equals(Feature.WordDist.class)) {
+			return new Feature.WordDist(value);
+		} else if(clazz.equals(Feature.CandIsName.class)) {
+			return new Feature.CandIsName(value != 0);
+		} else if(clazz.equals(Feature.FixedIsName.class)) {
+			return new Feature.FixedIsName(value != 0);
+		} else if(clazz.equals(Feature.FixedIsDef.class)) {
+			return new Feature.FixedIsDef(value != 0);
+		} else if(clazz.equals(Feature.CandIsDef.class)) {
+			return new Feature.CandIsDef(value != 0);
+		} else if(clazz.equals(Feature.GenderAgreement.class)) {
+			return new Feature.GenderAgreement(value != 0);
+		} else if(clazz.equals(Feature.PersonAgreement.class)) {
+			return new Feature.PersonAgreement(value != 0);
+		} else if(clazz.equals(Feature.PersonCand.class)) {
+			return new Feature.PersonCand(value);
+		} else if(clazz.equals(Feature.PersonFixed.class)) {
+			return new Feature.PersonFixed(value);
+		} else if(clazz.equals(Feature.HeadMatch.class)) {
+			return new Feature.HeadMatch(value != 0);
+		} else {
+			throw new IllegalArgumentException("Unregistered feature: " + clazz);
+		}
+	}
+
+	/**
+	 * The value of a feature (the inverse of makeFeature())
+	 */
+	private static int valueOf(Feature feature){
+		if(feature instanceof Feature.Indicator){
+			return bit(((Feature.Indicator) feature).value);
+		} else if(feature instanceof Feature.IntIndicator){
+			return ((Feature.IntIndicator) feature).value;
+		} else {
+			throw new IllegalArgumentException("Feature has no value: " + feature);
+		}
+	}
+
+	/**
+	 * The value of a pair feature, packed into a single int
+	 */
+	private static int pairValue(int first, int second){ return (first << 16) + second; }
+
 	public FeatureExtractor<Pair<Mention,ClusteredMention>,Feature,Boolean> extractor = new FeatureExtractor<Pair<Mention, ClusteredMention>, Feature, Boolean>() {
 		private <E> Feature feature(Class<E> clazz, Pair<Mention,ClusteredMention> input, Option<Double> count){
-			
-			//--Variables
 			Mention onPrix = input.getFirst(); //the first mention (referred to as m_i in the handout)
 			Mention candidate = input.getSecond().mention; //the second mention (referred to as m_j in the handout)
-			Entity candidateCluster = input.getSecond().entity; //the cluster containing the second mention
-
-			//--Features
-			if(clazz.equals(Feature.ExactMatch.class)){
-				//(exact string match)
-				return new Feature.ExactMatch(onPrix.gloss().equals(candidate.gloss()));
-			} else if(clazz.equals(Feature.FixedIsPronoun.class)) {
-				return new Feature.FixedIsPronoun(Pronoun.isSomePronoun(onPrix.gloss()));
-			} else if(clazz.equals(Feature.CandIsPronoun.class)) {
-				return new Feature.CandIsPronoun(Pronoun.isSomePronoun(candidate.gloss()));
-			} else if(clazz.equals(Feature.WordDist.class)) {
-				int wordDist = Math.abs(onPrix.beginIndexInclusive - candidate.endIndexExclusive);
-				if(wordDist > 20) 	return new Feature.WordDist(4);
-				if(wordDist > 10) 	return new Feature.WordDist(3);
-				if(wordDist > 5) 	return new Feature.WordDist(2);
-				if(wordDist > 2) 	return new Feature.WordDist(1);
-				return new Feature.WordDist(0);
-
-			} else if(clazz.equals(Feature.CandIsName.class)) {
-				return new Feature.CandIsName(Name.isName(candidate.gloss()));
-			} else if(clazz.equals(Feature.FixedIsName.class)) {
-				return new Feature.FixedIsName(Name.isName(onPrix.gloss()));
-			} else if(clazz.equals(Feature.FixedIsDef.class)) {
-				return new Feature.FixedIsDef(onPrix.gloss().toLowerCase().startsWith("the "));
-			}else if(clazz.equals(Feature.CandIsDef.class)) {
-				return new Feature.CandIsDef(candidate.gloss().toLowerCase().startsWith("the "));
-			}else if(clazz.equals(Feature.GenderAgreement.class)) {
-				Gender candGender = null;
-				if(Name.isName(candidate.gloss())) {
-					candGender = Name.gender(candidate.gloss());
-				} else if(Pronoun.isSomePronoun(candidate.gloss())) {
-					Pronoun candPronoun = Pronoun.valueOrNull(candidate.gloss());
-					if(candPronoun != null)
-						candGender = Pronoun.valueOrNull(candidate.gloss()).gender;
-				}
-				Gender fixedGender = null;
-				if(Name.isName(onPrix.gloss())) {
-					fixedGender = Name.gender(onPrix.gloss());
-				} else if(Pronoun.isSomePronoun(onPrix.gloss())) {
-					Pronoun fixedPronoun = Pronoun.valueOrNull(onPrix.gloss());
-					if(fixedPronoun != null)
-						fixedGender = Pronoun.valueOrNull(onPrix.gloss()).gender;
-				}
-				if(candGender==null || fixedGender == null)
-					return new Feature.GenderAgreement(true);
-				//if(candGender == fixedGender)
-				//	System.out.println("Same gender: " + candidate.gloss() + ", " + onPrix.gloss());
-				return new Feature.GenderAgreement(candGender != fixedGender);
-			} else if(clazz.equals(Feature.PersonAgreement.class)) {
-				int person1 = -1;
-				int person2 = -1;
-				if(Pronoun.isSomePronoun(candidate.gloss())) {
-					person1 = Pronoun.person(candidate.gloss());
-				}
-				if(Pronoun.isSomePronoun(onPrix.gloss())) {
-					person2 = Pronoun.person(onPrix.gloss());
-				}
-				return new Feature.PersonAgreement((person1!=-1 && person2!=-1 && person1==person2));
-			} else if(clazz.equals(Feature.PersonCand.class)) {
-				return new Feature.PersonCand(Pronoun.person(candidate.gloss()));
-			} else if(clazz.equals(Feature.PersonFixed.class)) {
-				return new Feature.PersonFixed(Pronoun.person(onPrix.gloss()));
-			} else if(clazz.equals(Feature.HeadMatch.class)) {
-				return new Feature.HeadMatch(candidate.headWord().equalsIgnoreCase(onPrix.headWord()));
-			}
-			else {
-				throw new IllegalArgumentException("Unregistered feature: " + clazz);
-			}
+			return makeFeature(clazz, featureValue(clazz, onPrix, candidate));
 		}
 
 		@SuppressWarnings({"unchecked"})
@@ -167,48 +280,171 @@ public class ClassifierBased implements CoreferenceSystem {
 		}
 	};
 
+	/*
+	 * Training documents are read in order, and their features extracted on a pool of
+	 * -extractionThreads threads, created once per call to train(); at most
+	 * EXTRACTION_WINDOW documents per thread are in flight at once.
+	 * Progress is logged every PROGRESS_INTERVAL documents.
+	 */
+	private int extractionThreads = Runtime.getRuntime().availableProcessors();
+	private static final int EXTRACTION_WINDOW = 4;
+	private static final int PROGRESS_INTERVAL = 100;
+
+	/*
+	 * The classifier is trained either by LinearClassifierFactory, on a dataset of every
+	 * training datum (-trainer batch, the default), or by an AdaGradTrainer, which streams
+	 * the datums in mini-batches and keeps only the weights in memory (-trainer adagrad).
+	 * The AdaGradTrainer runs -trainerEpochs epochs on -trainerThreads threads. Its batches
+	 * are trained while the next documents are extracted, so both pools are busy at once;
+	 * by default they split the processors between them (see configure()).
+	 */
+	private boolean onlineTrainer = false;
+	private int trainerThreads = Runtime.getRuntime().availableProcessors();
+	private int trainerEpochs = 5;
+	private static final int TRAINER_BATCH_SIZE = 32;
+	private static final double TRAINER_LEARNING_RATE = 0.1;
+	private static final double TRAINER_L2 = 1e-4;
+
+	/**
+	 * The training datums of one document, along with the counts of the candidate
+	 * generator used to find them
+	 */
+	private static class Shard {
+		private final List<RVFDatum<Boolean,Feature>> datums = new ArrayList<RVFDatum<Boolean,Feature>>();
+		private final CandidateGenerator candidates;
+		private Shard(CandidateGenerator candidates){ this.candidates = candidates; }
+	}
+
+	/**
+	 * Extract the training datums of a document.
+	 * This is called concurrently on different documents; it only touches the document,
+	 * its gold clusters, and the shard's own candidate generator.
+	 * @param doc The document, with its mentions set
+	 * @param goldClusters The true clusters of the document
+	 * @return The document's datums, in mention order
+	 */
+	private Shard extractDocument(Document doc, List<Entity> goldClusters){
+		Shard shard = new Shard(candidates.copy());
+		List<Mention> mentions = doc.getMentions();
+		Map<Mention,Entity> goldEntities = Entity.mentionToEntityMap(goldClusters);
+		//(for each mention...)
+		for(int i=0; i<mentions.size(); i++){
+			//(get the mention and its cluster)
+			Mention onPrix = mentions.get(i);
+			Entity source = goldEntities.get(onPrix);
+			if(source == null){ throw new IllegalArgumentException("Mention has no gold entity: " + onPrix); }
+			//(for each previous mention...)
+			int first = shard.candidates.firstCandidate(doc, mentions, i);
+			for(int j=i-1; j>=first; j--){
+				//(get previous mention and its cluster)
+				Mention cand = mentions.get(j);
+				if(!shard.candidates.isCandidate(onPrix, cand)){ continue; }
+				Entity target = goldEntities.get(cand);
+				if(target == null){ throw new IllegalArgumentException("Mention has no gold entity: " + cand); }
+				//(extract features)
+				Counter<Feature> feats = extractor.extractFeatures(Pair.make(onPrix, cand.markCoreferent(target)));
+				//(add datum)
+				shard.datums.add(new RVFDatum<Boolean, Feature>(feats, target == source));
+				//(stop if we found the antecedent)
+				if(target == source){ break; }
+			}
+		}
+		return shard;
+	}
+
+	/**
+	 * Receives the training datums, in document order
+	 */
+	private static interface DatumSink {
+		public void add(RVFDatum<Boolean,Feature> datum);
+	}
+
+	/**
+	 * Extract the training datums of every document, in parallel, and pass them in
+	 * document order to a sink on this thread.
+	 * @param trainingData The training documents
+	 * @param pool The extraction threads, or null to extract on this thread
+	 * @param sink The receiver of the datums
+	 */
+	private void extractAll(Collection<Pair<Document, List<Entity>>> trainingData, ExecutorService pool, DatumSink sink){
+		candidates.resetCounts();
+		long start = System.currentTimeMillis();
+		int documents = 0;
+		int datums = 0;
+		try {
+			LinkedList<Future<Shard>> pending = new LinkedList<Future<Shard>>();
+			Iterator<Pair<Document,List<Entity>>> iter = trainingData.iterator();
+			while(iter.hasNext() || !pending.isEmpty()){
+				//(queue documents)
+				while(iter.hasNext() && pending.size() < extractionThreads * EXTRACTION_WINDOW){
+					final Pair<Document,List<Entity>> datum = iter.next();
+					Callable<Shard> task = new Callable<Shard>(){
+						public Shard call(){ return extractDocument(datum.getFirst(), datum.getSecond()); }
+					};
+					if(pool == null){
+						FutureTask<Shard> inline = new FutureTask<Shard>(task);
+						inline.run();
+						pending.add(inline);
+					} else {
+						pending.add(pool.submit(task));
+					}
+				}
+				//(merge the oldest document)
+				Shard shard = pending.removeFirst().get();
+				for(RVFDatum<Boolean,Feature> d : shard.datums){ sink.add(d); }
+				datums += shard.datums.size();
+				candidates.addCounts(shard.candidates);
+				documents += 1;
+				if(documents % PROGRESS_INTERVAL == 0){ log(extractionProgress(documents, datums, start)); }
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+			throw new RuntimeException(e.getCause());
+		}
+		log(extractionProgress(documents, datums, start));
+		log("Candidate antecedents: " + candidates.summary());
+	}
+
 	public void train(Collection<Pair<Document, List<Entity>>> trainingData) {
 		startTrack("Training");
+		ExecutorService pool = extractionThreads > 1 ? Executors.newFixedThreadPool(extractionThreads) : null;
+		try {
+			if(onlineTrainer){
+				trainOnline(trainingData, pool);
+			} else {
+				trainBatch(trainingData, pool);
+			}
+		} finally {
+			if(pool != null){ pool.shutdownNow(); }
+		}
+		//(the training counts were logged by extractAll(); from here on, candidates counts
+		// the pairs of every document run, for a single summary per test pass; see report())
+		candidates.resetCounts();
+		endTrack("Training");
+	}
+
+	/**
+	 * Train with LinearClassifierFactory, on a dataset of every training datum
+	 */
+	private void trainBatch(Collection<Pair<Document, List<Entity>>> trainingData, ExecutorService pool) {
 		//--Variables
-		RVFDataset<Boolean, Feature> dataset = new RVFDataset<Boolean, Feature>();
+		final RVFDataset<Boolean, Feature> dataset = new RVFDataset<Boolean, Feature>();
 		LinearClassifierFactory<Boolean, Feature> fact = new LinearClassifierFactory<Boolean,Feature>();
 		//--Feature Extraction
+		//(documents are extracted in parallel, but their datums are added to the dataset
+		// -- and their features indexed -- on this thread, in document order; the dataset
+		// is the same as a serial pass would build)
 		startTrack("Feature Extraction");
-		for(Pair<Document,List<Entity>> datum : trainingData){
-			//(document variables)
-			Document doc = datum.getFirst();
-			List<Entity> goldClusters = datum.getSecond();
-			List<Mention> mentions = doc.getMentions();
-			Map<Mention,Entity> goldEntities = Entity.mentionToEntityMap(goldClusters);
-			startTrack("Document " + doc.id);
-			//(for each mention...)
-			for(int i=0; i<mentions.size(); i++){
-				//(get the mention and its cluster)
-				Mention onPrix = mentions.get(i);
-				Entity source = goldEntities.get(onPrix);
-				if(source == null){ throw new IllegalArgumentException("Mention has no gold entity: " + onPrix); }
-				//(for each previous mention...)
-				int oldSize = dataset.size();
-				for(int j=i-1; j>=0; j--){
-					//(get previous mention and its cluster)
-					Mention cand = mentions.get(j);
-					Entity target = goldEntities.get(cand);
-					if(target == null){ throw new IllegalArgumentException("Mention has no gold entity: " + cand); }
-					//(extract features)
-					Counter<Feature> feats = extractor.extractFeatures(Pair.make(onPrix, cand.markCoreferent(target)));
-					//(add datum)
-					dataset.add(new RVFDatum<Boolean, Feature>(feats, target == source));
-					//(stop if
-					if(target == source){ break; }
-				}
-				//logf("Mention %s (%d datums)", onPrix.toString(), dataset.size() - oldSize);
-			}
-			endTrack("Document " + doc.id);
-		}
+		extractAll(trainingData, pool, new DatumSink(){
+			public void add(RVFDatum<Boolean,Feature> datum){ dataset.add(datum); }
+		});
 		endTrack("Feature Extraction");
 		//--Train Classifier
 		startTrack("Minimizer");
 		this.classifier = fact.trainClassifier(dataset);
+		this.compiled = CompiledClassifier.compile(classifier);
 		endTrack("Minimizer");
 		//--Dump Weights
 		startTrack("Features");
@@ -223,7 +459,56 @@ public class ClassifierBased implements CoreferenceSystem {
 			log(FORCE,new DecimalFormat("0.000").format(magnitude) + " [" + label + "] " + feature);
 		}
 		end_Track("Features");
-		endTrack("Training");
+	}
+
+	/**
+	 * Train with an AdaGradTrainer, streaming datums from the documents on every epoch;
+	 * no dataset is kept in memory
+	 */
+	private void trainOnline(Collection<Pair<Document, List<Entity>>> trainingData, ExecutorService pool) {
+		//--Train Classifier
+		startTrack("AdaGrad");
+		final AdaGradTrainer<Feature> trainer = new AdaGradTrainer<Feature>(trainerThreads, TRAINER_BATCH_SIZE, TRAINER_LEARNING_RATE, TRAINER_L2);
+		try {
+			for(int epoch=1; epoch<=trainerEpochs; epoch++){
+				startTrack("Epoch " + epoch);
+				extractAll(trainingData, pool, new DatumSink(){
+					public void add(RVFDatum<Boolean,Feature> datum){ trainer.add(datum.asFeaturesCounter(), datum.label()); }
+				});
+				log("Average log loss: " + new DecimalFormat("0.0000").format(trainer.finishEpoch()));
+				endTrack("Epoch " + epoch);
+			}
+		} finally {
+			trainer.close();
+		}
+		//(the score of false is fixed at 0)
+		List<Feature> features = new ArrayList<Feature>();
+		double[] trueWeights = new double[trainer.numFeatures()];
+		for(int f=0; f<trainer.numFeatures(); f++){
+			features.add(trainer.feature(f));
+			trueWeights[f] = trainer.weight(f);
+		}
+		this.classifier = null;
+		this.compiled = new CompiledClassifier(features, trueWeights, new double[trueWeights.length], trainer.bias(), 0.0);
+		endTrack("AdaGrad");
+		//--Dump Weights
+		startTrack("Features");
+		Integer[] order = new Integer[features.size()];
+		for(int f=0; f<order.length; f++){ order[f] = f; }
+		final double[] weights = trueWeights;
+		Arrays.sort(order, new Comparator<Integer>(){
+			public int compare(Integer a, Integer b){ return Double.compare(Math.abs(weights[b]), Math.abs(weights[a])); }
+		});
+		for(int k=0; k<Math.min(100, order.length); k++){
+			log(FORCE,new DecimalFormat("0.000").format(weights[order[k]]) + " [true] " + features.get(order[k]));
+		}
+		end_Track("Features");
+	}
+
+	private String extractionProgress(int documents, int datums, long start){
+		double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+		return "Extracted " + datums + " datums from " + documents + " documents (" +
+				new DecimalFormat("0").format(datums / seconds) + " datums/sec, " + extractionThreads + " threads)";
 	}
 
 	public List<ClusteredMention> runCoreference(Document doc) {
@@ -239,9 +524,12 @@ public class ClassifierBased implements CoreferenceSystem {
 			Mention onPrix = mentions.get(i);
 			int coreferentWith = -1;
 			//(get mention it is coreferent with)
-			for(int j=i-1; j>=0; j--){
+			int first = candidates.firstCandidate(doc, mentions, i);
+			for(int j=i-1; j>=first; j--){
 				ClusteredMention cand = rtn.get(j);
-				boolean coreferent = classifier.classOf(new RVFDatum<Boolean, Feature>(extractor.extractFeatures(Pair.make(onPrix, cand))));
+				if(!candidates.isCandidate(onPrix, cand.mention)){ continue; }
+				boolean coreferent = compiled.classOf(onPrix, cand.mention);
+				assert classifier == null || coreferent == classifier.classOf(new RVFDatum<Boolean, Feature>(extractor.extractFeatures(Pair.make(onPrix, cand))));
 				if(coreferent){
 					coreferentWith = j;
 					break;
@@ -262,6 +550,124 @@ public class ClassifierBased implements CoreferenceSystem {
 		return rtn;
 	}
 
+	/**
+	 * The trained classifier, compiled down to arrays.
+	 * Each template in ACTIVE_FEATURES gets an int index, and a sorted table from the
+	 * values its feature takes to the classifier's weights for that feature. Scoring a
+	 * pair of mentions fills a reusable buffer with the value of each template, and
+	 * sums the matching weights; no Feature, Counter or Datum is created.
+	 * The prediction is the same as LinearClassifier.classOf() on the extracted features,
+	 * for a classifier trained by LinearClassifierFactory.
+	 */
+	private static class CompiledClassifier {
+		private final Object[] templates = ACTIVE_FEATURES.toArray();
+		private final int[][] values = new int[templates.length][];
+		private final double[][] trueWeights = new double[templates.length][];
+		private final double[][] falseWeights = new double[templates.length][];
+		private final double trueBias;
+		private final double falseBias;
+		private final int[] active = new int[templates.length];
+
+		/**
+		 * Compile a classifier given by a weight per feature for each label
+		 * @param features The features
+		 * @param featureTrueWeights The weight of each feature for the label true
+		 * @param featureFalseWeights The weight of each feature for the label false
+		 * @param trueBias The score of true for a datum with no features
+		 * @param falseBias The score of false for a datum with no features
+		 */
+		private CompiledClassifier(List<Feature> features, double[] featureTrueWeights, double[] featureFalseWeights, double trueBias, double falseBias){
+			//--Index Templates
+			Map<Object,Integer> templateIndex = new HashMap<Object,Integer>();
+			for(int t=0; t<templates.length; t++){ templateIndex.put(templates[t], t); }
+			//--Collect Weights
+			List<TreeMap<Integer,Integer>> byTemplate = new ArrayList<TreeMap<Integer,Integer>>();
+			for(int t=0; t<templates.length; t++){ byTemplate.add(new TreeMap<Integer,Integer>()); }
+			for(int f=0; f<features.size(); f++){
+				Feature feature = features.get(f);
+				Object template;
+				int value;
+				if(feature instanceof Feature.PairFeature){
+					Pair<Feature,Feature> content = ((Feature.PairFeature) feature).content;
+					template = Pair.make(content.getFirst().getClass(), content.getSecond().getClass());
+					value = pairValue(valueOf(content.getFirst()), valueOf(content.getSecond()));
+				} else {
+					template = feature.getClass();
+					value = valueOf(feature);
+				}
+				Integer t = templateIndex.get(template);
+				if(t != null){ byTemplate.get(t).put(value, f); }
+			}
+			//--Build Tables
+			for(int t=0; t<templates.length; t++){
+				int size = byTemplate.get(t).size();
+				values[t] = new int[size];
+				trueWeights[t] = new double[size];
+				falseWeights[t] = new double[size];
+				int k = 0;
+				for(Map.Entry<Integer,Integer> entry : byTemplate.get(t).entrySet()){
+					values[t][k] = entry.getKey();
+					trueWeights[t][k] = featureTrueWeights[entry.getValue()];
+					falseWeights[t][k] = featureFalseWeights[entry.getValue()];
+					k += 1;
+				}
+			}
+			//--Biases
+			this.trueBias = trueBias;
+			this.falseBias = falseBias;
+		}
+
+		/**
+		 * Compile a classifier trained by LinearClassifierFactory
+		 */
+		private static CompiledClassifier compile(LinearClassifier<Boolean,Feature> classifier){
+			int trueLabel = classifier.labelIndex().indexOf(true);
+			int falseLabel = classifier.labelIndex().indexOf(false);
+			double[][] weights = classifier.weights();
+			int numFeatures = classifier.featureIndex().size();
+			List<Feature> features = new ArrayList<Feature>(numFeatures);
+			double[] trueWeights = new double[numFeatures];
+			double[] falseWeights = new double[numFeatures];
+			for(int f=0; f<numFeatures; f++){
+				features.add(classifier.featureIndex().get(f));
+				trueWeights[f] = trueLabel < 0 ? 0.0 : weights[f][trueLabel];
+				falseWeights[f] = falseLabel < 0 ? 0.0 : weights[f][falseLabel];
+			}
+			//(the score of a datum with no features)
+			Counter<Boolean> bias = classifier.scoresOf(new RVFDatum<Boolean,Feature>(new ClassicCounter<Feature>()));
+			return new CompiledClassifier(features, trueWeights, falseWeights,
+					trueLabel < 0 ? Double.NEGATIVE_INFINITY : bias.getCount(true),
+					falseLabel < 0 ? Double.NEGATIVE_INFINITY : bias.getCount(false));
+		}
+
+		@SuppressWarnings({"unchecked"})
+		private boolean classOf(Mention onPrix, Mention candidate){
+			//--Feature Values
+			for(int t=0; t<templates.length; t++){
+				if(templates[t] instanceof Class){
+					//(case: singleton feature)
+					active[t] = featureValue((Class<?>) templates[t], onPrix, candidate);
+				} else {
+					//(case: pair of features)
+					Pair<Class<?>,Class<?>> pair = (Pair<Class<?>,Class<?>>) templates[t];
+					active[t] = pairValue(featureValue(pair.getFirst(), onPrix, candidate), featureValue(pair.getSecond(), onPrix, candidate));
+				}
+			}
+			//--Dot Product
+			double scoreTrue = 0.0;
+			double scoreFalse = 0.0;
+			for(int t=0; t<templates.length; t++){
+				int k = Arrays.binarySearch(values[t], active[t]);
+				if(k >= 0){
+					scoreTrue += trueWeights[t][k];
+					scoreFalse += falseWeights[t][k];
+				}
+			}
+			//(ties go to false, as in LinearClassifier.classOf())
+			return scoreTrue + trueBias > scoreFalse + falseBias;
+		}
+	}
+
 	private class Option<T> {
 		private T obj;
 		public Option(T obj){ this.obj = obj; }
@@ -7,6 +7,7 @@ import cs224n.util.Pair;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Properties;
 
 /**
  * The framework class for building a coreference system.
@@ -22,6 +23,39 @@ import java.util.List;
  */
 public interface CoreferenceSystem {
 
+  /**
+   * A marker for coreference systems whose runCoreference() method cannot be called
+   * on several documents at once (e.g., because it stores per-document state in fields).
+   * The tester will always run such systems on a single thread, regardless of
+   * the -threads flag.
+   */
+  public static interface NotThreadSafe { }
+
+  /**
+   * A coreference system with options of its own. The tester passes it the
+   * command line properties (e.g., -trainer adagrad) before training.
+   */
+  public static interface Configurable {
+    /**
+     * Read the system's options from the command line properties.
+     * @param props The properties the tester was run with
+     */
+    public void configure(Properties props);
+  }
+
+  /**
+   * A coreference system with statistics of its own (e.g., how many candidate
+   * antecedents were pruned). The tester prints the report once after each pass
+   * over a test set.
+   */
+  public static interface Reporting {
+    /**
+     * Summarize the documents run since the last report, and start counting afresh.
+     * @return A one line summary
+     */
+    public String report();
+  }
+
   /**
    * This method is used to train your coreference system, if you are building a learning-based
    * approach.
@@ -5,22 +5,36 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.*;
 
-import cs224n.ling.Tree;
+import cs224n.ling.TreeIndex;
 
 import cs224n.coref.ClusteredMention;
 import cs224n.coref.Document;
 import cs224n.coref.Entity;
 import cs224n.coref.Sentence;
 import cs224n.coref.Mention;
+import cs224n.coref.MentionClusters;
 import cs224n.coref.Name;
 import cs224n.coref.Pronoun;
+import cs224n.util.Indexer;
 import cs224n.util.Pair;
 import cs224n.coref.Util;
 
-public class RuleBased implements CoreferenceSystem {
+public class RuleBased implements CoreferenceSystem, CoreferenceSystem.NotThreadSafe {
   private final int NUM_PRIORITY = 6;
   Map<String, Set<String> > trainHeadCoreference;
-  Map<Tree<String>, Mention> parseToMentionMap;
+  // Parse tree indices, shared label ids, and the mention at each parse node;
+  // rebuilt for every document
+  private final Indexer<String> labels = new Indexer<String>();
+  private final int NP = labels.addAndGetIndex("NP");
+  private final int S = labels.addAndGetIndex("S");
+  private final int NN = labels.addAndGetIndex("NN");
+  private final int NNS = labels.addAndGetIndex("NNS");
+  private final int NNP = labels.addAndGetIndex("NNP");
+  private final int NNPS = labels.addAndGetIndex("NNPS");
+  private List<TreeIndex<String> > parses;
+  private Mention[][] mentionAtNode;
+  private int[] nodeOfMention;
+  private final TreeIndex.Traversal traversal = new TreeIndex.Traversal();
 
   @Override
   public void train(Collection<Pair<Document, List<Entity>>> trainingData) {
@@ -33,11 +47,11 @@ public class RuleBased implements CoreferenceSystem {
       //--Iterate Over Coreferent Mention Pairs
       for(Entity e : clusters){
         for(Pair<Mention, Mention> mentionPair : e.orderedMentionPairs()){
-            String firstHeadWord = mentionPair.getFirst().headWord();
-            String secondHeadWord = mentionPair.getSecond().headWord();
+            String firstHeadWord = mentionPair.getFirst().features().headWord;
+            String secondHeadWord = mentionPair.getSecond().features().headWord;
 
-            if ((Pronoun.isSomePronoun(firstHeadWord)) ||
-                  (Pronoun.isSomePronoun(secondHeadWord))) {
+            if ((mentionPair.getFirst().features().headIsPronoun) ||
+                  (mentionPair.getSecond().features().headIsPronoun)) {
               continue;
             }
 
@@ -51,31 +65,31 @@ public class RuleBased implements CoreferenceSystem {
 	}
 
   private boolean similarSubsentence(Mention m1, Mention m2) {
-    List<String> words1 = m1.text();
-    List<String> words2 = m2.text();
+    int[] words1 = m1.textIds();
+    int[] words2 = m2.textIds();
     double threshold = 0.65;
 
-    if (words1.get(0).toLowerCase().equals("the") &&
-        words2.get(0).toLowerCase().equals("the")) 
+    if (m1.text().get(0).toLowerCase().equals("the") &&
+        m2.text().get(0).toLowerCase().equals("the")) 
         return false;
 
     int sameWord = 0;
-    for (int i = 0; i < words1.size(); i++) {
+    for (int i = 0; i < words1.length; i++) {
 
-      for (int j = 0; j < words2.size(); j++) {
-        if (words2.get(j).equals(words1.get(i))) {
+      for (int j = 0; j < words2.length; j++) {
+        if (words2[j] == words1[i]) {
           sameWord++;
         }
       }
     }
 
-    return ((sameWord >= threshold * words1.size()) && (sameWord >= threshold * words2.size()));
+    return ((sameWord >= threshold * words1.length) && (sameWord >= threshold * words2.length));
   }
 
   private boolean doesPassConstraints(Mention m1, Mention m2) {
     // NER tagging constraints
-    if (!m1.headToken().nerTag().equals("O") && !m2.headToken().nerTag().equals("0")) {
-      if (!m1.headToken().nerTag().equals(m2.headToken().nerTag())) {
+    if (!m1.features().nerTag.equals("O") && !m2.features().nerTag.equals("0")) {
+      if (!m1.features().nerTag.equals(m2.features().nerTag)) {
         return false;
       }
     }
@@ -133,208 +147,166 @@ public class RuleBased implements CoreferenceSystem {
     return true;
   }
  
-  private boolean isMatchWithPriority(Document doc, Set<Mention> cluster1, Set<Mention> cluster2, int priority) {
+  private boolean isMatchWithPriority(Document doc, Mention m1, Mention m2, int priority) {
     switch (priority) {
       case 1:
-              for (Mention m1: cluster1) {
-                for (Mention m2: cluster2) {
-                  if ((m1.gloss().equals(m2.gloss())) &&
-                          (!Pronoun.isSomePronoun(m1.gloss()))){
-                    // Exact string matching
-                    return true;
-                  }
-                }
-              }
-
-              return false;
+              // Exact string matching
+              return (m1.sameText(m2)) &&
+                      (!m1.features().isPronoun);
       case 2:
-              for (Mention m1: cluster1) {
-                for (Mention m2: cluster2) {
-                  Set<String> coreferenceSet = trainHeadCoreference.get(m1.headWord());
-                  if ((coreferenceSet != null) && (coreferenceSet.contains(m2.headWord()))) {
-                    return true;
-                  }
-
-                }
-              }
-
-              return false;
+              Set<String> coreferenceSet = trainHeadCoreference.get(m1.features().headWord);
+              return (coreferenceSet != null) && (coreferenceSet.contains(m2.features().headWord));
       case 3:
           // Constructs
-
-          for (Mention m1: cluster1) {
-            for (Mention m2: cluster2) {
-              // Shouldn't have used this line :-( how to fix?
-              if (!m1.headWord().equals(m2.headWord())) continue;
-              if (isAppositive(m1,m2, doc) && (doesPassConstraints(m1, m2))) {
-                return true;
-              }
-
-            }
-          }
-          return false; 
+          // Shouldn't have used this line :-( how to fix?
+          if (m1.features().headWordId != m2.features().headWordId) return false;
+          return isAppositive(m1,m2, doc) && (doesPassConstraints(m1, m2));
       case 4:
           // Word Inclusion
-          for (Mention m1: cluster1) {
-            String s1 = m1.gloss();
+          if ((m1.features().isPronoun) || (m1.length() < 2)) return false;
 
-            if ((Pronoun.isSomePronoun(s1)) || (m1.text().size() < 2))continue;
+          if ((m1.features().headWordId != m2.features().headWordId) ||
+              (m2.features().isPronoun) || (m2.length() < 2)) return false;
 
-            for (Mention m2: cluster2) {
-              String s2 = m2.gloss();
-
-              if (!m1.headWord().equals(m2.headWord()) ||
-                  (Pronoun.isSomePronoun(s2)) || (m2.text().size() < 2))continue;
-
-              if ((s1.indexOf(s2) != -1) && (doesPassConstraints(m1, m2))){
-
-                return true;
-              }
-            }
-          }
-
-          return false; 
+          return (m1.glossContains(m2)) && (doesPassConstraints(m1, m2));
       case 5:
         // Compatible modifier
-        for (Mention m1: cluster1) {
-            String s1 = m1.gloss();
-
-            if (Pronoun.isSomePronoun(s1)) continue;
-
-            for (Mention m2: cluster2) {
-              String s2 = m2.gloss();
-
-              if (!m1.headWord().equals(m2.headWord())) continue; 
-
-              if ((isCompatibleModifier(m1, m2)) && (doesPassConstraints(m1, m2))){
-
-                return true;
-              }
-            }
-          }
-        
-          return false; 
+        if (m1.features().isPronoun) return false;
+        if (m1.features().headWordId != m2.features().headWordId) return false;
+        return (isCompatibleModifier(m1, m2)) && (doesPassConstraints(m1, m2));
       case 6:
-        for (Mention m1: cluster1) {
-          if (!m1.headToken().isQuoted()) continue;
-          Pronoun p = Pronoun.valueOrNull(m1.gloss());
-          if (p == null) continue;
-
-          for (Mention m2: cluster2) {
-            if (m1.headToken().speaker().equals(m2.gloss()) && (p.speaker == Pronoun.Speaker.FIRST_PERSON)) {
-              return true; 
-            }
-          }
-        }
+        if (!m1.headToken().isQuoted()) return false;
+        Pronoun p = m1.features().pronoun;
+        if (p == null) return false;
+        return m1.headToken().speaker().equals(m2.features().gloss) && (p.speaker == Pronoun.Speaker.FIRST_PERSON);
       default: return false;
     }
   }
 
+  /**
+   * The mentions which could possibly match a mention at a given priority; that is,
+   * the only mentions for which isMatchWithPriority() may return true.
+   */
+  private List<Integer> candidatesWithPriority(Mention m1, int priority,
+                  Map<String, List<Integer> > byGloss, Map<String, List<Integer> > byHead) {
+    List<Integer> candidates = null;
+    switch (priority) {
+      case 1:
+        candidates = byGloss.get(m1.features().gloss);
+        break;
+      case 2:
+        Set<String> coreferenceSet = trainHeadCoreference.get(m1.features().headWord);
+        if (coreferenceSet == null) break;
+        candidates = new ArrayList<Integer>();
+        for (String head : coreferenceSet) {
+          List<Integer> withHead = byHead.get(head);
+          if (withHead != null) candidates.addAll(withHead);
+        }
+        break;
+      case 3:
+      case 4:
+      case 5:
+        candidates = byHead.get(m1.features().headWord);
+        break;
+      case 6:
+        if (m1.headToken().isQuoted()) candidates = byGloss.get(m1.headToken().speaker());
+        break;
+    }
+    return candidates == null ? Collections.<Integer>emptyList() : candidates;
+  }
+
+  private static void index(Map<String, List<Integer> > map, String key, int value) {
+    List<Integer> values = map.get(key);
+    if (values == null) {
+      values = new ArrayList<Integer>();
+      map.put(key, values);
+    }
+    values.add(value);
+  }
 
-  private boolean isHighestSInSentence(Tree<String> tree,
-                  Map<Tree<String>, Tree<String> > parentInfo) {
-    Tree<String> curTree = parentInfo.get(tree);
+  private boolean isHighestSInSentence(TreeIndex<String> parse, int node) {
+    int cur = parse.parent(node);
 
-    while (curTree != null) {
-      if (curTree.getLabel().equals("S")) {
+    while (cur >= 0) {
+      if (parse.label(cur) == S) {
         return false;
       }
-      curTree = parentInfo.get(curTree);
+      cur = parse.parent(cur);
     }
     return true;
   }
 
-  private Tree<String> closestNPOrSAncestor(Tree<String> subtree,
-                    Map<Tree<String>, Tree<String> > parentInfo,
-                    List<Tree<String> > topDownPath) {
-
-
-    Tree<String> currentTree = subtree;
-    Tree<String> resultTree = null;
-
+  private int closestNPOrSAncestor(TreeIndex<String> parse, int node) {
+    int cur = parse.parent(node);
 
-    if (topDownPath != null) {
-      topDownPath.removeAll(topDownPath);
-      topDownPath.add(currentTree);
-    }
-
-    currentTree = parentInfo.get(currentTree);
-
-    while (currentTree != null) {
-      if (topDownPath != null) 
-        topDownPath.add(currentTree);
-
-      if (currentTree.getLabel().equals("NP") ||
-          currentTree.getLabel().equals("S")) {
-        resultTree = currentTree;
-        break;
+    while (cur >= 0) {
+      if (parse.label(cur) == NP || parse.label(cur) == S) {
+        return cur;
       }
+      cur = parse.parent(cur);
+    }
+    return -1;
+  }
 
-      currentTree = parentInfo.get(currentTree);
+  private Mention proposeAntecedent(Mention m, int sentence, int node) {
+    Mention match = mentionAtNode[sentence][node];
+    if ((match != null) && (doesPassConstraints(m, match))) {
+      return match;
     }
-    if (topDownPath != null)
-      Collections.reverse(topDownPath);
-    return resultTree;
+    return null;
   }
 
-  
-  private Mention getHobbsMatch (Document doc, Mention m) {
-    Map<Tree<String>, Tree<String> > parentInfo = new HashMap<Tree<String>, Tree<String> > ();
-    Tree.extractParentRelationship(m.sentence.parse, parentInfo);
+  private Mention getHobbsMatch (Document doc, int mentionIndex) {
+    Mention m = doc.getMentions().get(mentionIndex);
+    int sentence = doc.indexOfSentence(m.sentence);
+    TreeIndex<String> parse = parses.get(sentence);
+    int node = nodeOfMention[mentionIndex];
+    if (node < 0) return null;
 
     // 1. Begin at NP
-    Tree<String> dominatingNP = m.parse;
-    if (!m.parse.getLabel().equals("NP")) {
-      dominatingNP = parentInfo.get(parentInfo.get(m.parse));
+    int dominatingNP = node;
+    if (parse.label(node) != NP) {
+      int parent = parse.parent(node);
+      dominatingNP = parent < 0 ? -1 : parse.parent(parent);
     }
+    if (dominatingNP < 0) return null;
 
     // 2. Go up tree to first NP or S.
-
-    List<Tree<String> > pathP = new ArrayList<Tree<String> > ();
-    Tree<String> XTree = closestNPOrSAncestor(dominatingNP,
-                                              parentInfo,
-                                              pathP);
-
-    if (XTree == null) return null;
-    Tree<String> currentTree = null;
+    int X = closestNPOrSAncestor(parse, dominatingNP);
+    if (X < 0) return null;
+    int[] pathP = parse.path(X, dominatingNP);
 
     // 3. Traverse all branches below X to the left of p, left-to-right,
     // breadth-first.
     // Propose as antecedent any NP that has a NP or S between it and X.
-    boolean found = false;
-
-    for (Tree<String> tree: Tree.getBFSTraversalWithRightBoundary(XTree, pathP)) {
-      
-      if (tree.getLabel().equals("NP")) {
+    traversal.startLeftOf(parse, X, pathP);
+    for (int tree = traversal.next(); tree >= 0; tree = traversal.next()) {
+      if (parse.label(tree) == NP) {
         // traverse up to X and check whether it has NP or S
-        currentTree = parentInfo.get(tree);
-        
-        while ((currentTree != null) && (!currentTree.equals(XTree))){
-          if (currentTree.getLabel().equals("NP") ||
-            currentTree.getLabel().equals("S")) {
-            Mention match = parseToMentionMap.get(tree);
-            if ((match != null) && (doesPassConstraints(m, match))) {
-              return match;
-            }
+        int cur = parse.parent(tree);
+
+        while ((cur >= 0) && (cur != X)) {
+          if (parse.label(cur) == NP || parse.label(cur) == S) {
+            Mention match = proposeAntecedent(m, sentence, tree);
+            if (match != null) return match;
             break;
           }
-          currentTree = parentInfo.get(currentTree);
+          cur = parse.parent(cur);
         }
       }
     }
 
-    while (XTree != null) {
-      //4. If X is the highest S in the sentence:  
-      if (isHighestSInSentence(XTree, parentInfo)) {
+    while (true) {
+      //4. If X is the highest S in the sentence:
+      if (isHighestSInSentence(parse, X)) {
         // Traverse parse trees of previous sentences in order of recency.
-        for (int i = doc.indexOfSentence(m.sentence) - 1; i >= 0; i--) {
-          Sentence curSentence = doc.sentences.get(i);
-          for (Tree<String> tree: Tree.getBFSTraversalWithRightBoundary(curSentence.parse, null)) {
-            if (tree.getLabel().equals("NP")) {
-              Mention match = parseToMentionMap.get(tree);
-              if ((match != null) && (doesPassConstraints(m, match))) {
-                return match;
-              }
+        for (int i = sentence - 1; i >= 0; i--) {
+          TreeIndex<String> previous = parses.get(i);
+          traversal.startLeftOf(previous, 0, null);
+          for (int tree = traversal.next(); tree >= 0; tree = traversal.next()) {
+            if (previous.label(tree) == NP) {
+              Mention match = proposeAntecedent(m, i, tree);
+              if (match != null) return match;
             }
           }
         }
@@ -342,143 +314,137 @@ public class RuleBased implements CoreferenceSystem {
 
       } else {
         // 5. From node X, go up the tree to the first NP or S.
-        Tree<String> XTree2 = closestNPOrSAncestor(XTree, parentInfo, pathP);
+        int X2 = closestNPOrSAncestor(parse, X);
+        pathP = parse.path(X2, X);
         // 6. If X is an NP and the path p to X did not pass through the
         // nominal that X dominates, propose X as antecedent
-        if (XTree2.getLabel().equals("NP")) {
+        if (parse.label(X2) == NP) {
           boolean hasNominal = false;
-          for (Tree<String> tree: pathP) {
-            if (tree.equals(XTree2) || tree.equals(XTree)) {
-              continue;
-            }
-            if (isNominal(tree.getLabel())) {
+          for (int k = 1; k < pathP.length - 1; k++) {
+            if (isNominal(parse.label(pathP[k]))) {
               hasNominal = true;
               break;
             }
           }
           if (!hasNominal) {
-            Mention match = parseToMentionMap.get(XTree2);
-            if ((match != null) && (doesPassConstraints(m, match))) {
-              return match;
-            }
+            Mention match = proposeAntecedent(m, sentence, X2);
+            if (match != null) return match;
           }
-        } 
+        }
         // 7. Traverse all branches below X to the left of the path. Propose
         // any NP encountered as the antecedent.
-  
-        for (Tree<String> tree: Tree.getBFSTraversalWithRightBoundary(XTree2, pathP)) { 
-          if (tree.getLabel().equals("NP")) {
-            Mention match = parseToMentionMap.get(tree);
-            if ((match != null) && (doesPassConstraints(m, match))) {
-              return match;
-            }
+
+        traversal.startLeftOf(parse, X2, pathP);
+        for (int tree = traversal.next(); tree >= 0; tree = traversal.next()) {
+          if (parse.label(tree) == NP) {
+            Mention match = proposeAntecedent(m, sentence, tree);
+            if (match != null) return match;
           }
         }
-  
-  
+
+
         // 8. If X is an S node, traverse all branches of X to the right of the path
         // but do not go below any NP or S encountered. Propose any NP as the antecedent.
-        if (XTree2.getLabel().equals("S")) {
-          for (Tree<String> tree: Tree.getBFSTraversalWithLeftBoundary(XTree2, pathP)) {
-            if (tree.getLabel().equals("NP")) {
-              Mention match = parseToMentionMap.get(tree);
-              if ((match != null) && (doesPassConstraints(m, match))) {
-                return match;
-              }
+        if (parse.label(X2) == S) {
+          traversal.startRightOf(parse, X2, pathP);
+          for (int tree = traversal.next(); tree >= 0; tree = traversal.next()) {
+            if (parse.label(tree) == NP) {
+              Mention match = proposeAntecedent(m, sentence, tree);
+              if (match != null) return match;
             }
           }
         }
 
-       XTree = XTree2;
-  
+       X = X2;
+
       }
-    } 
+    }
 
     return null;
   }
 
 
-  private boolean isNominal(String tag) {
-    return tag.equals("NN") || tag.equals("NNS") || tag.equals("NNP") || tag.equals("NNPS");
+  private boolean isNominal(int label) {
+    return label == NN || label == NNS || label == NNP || label == NNPS;
+  }
+
+  /**
+   * Index the parse of every sentence of a document, and find the parse tree
+   * node of every mention.
+   */
+  private void indexParses(Document doc) {
+    List<Mention> mentions = doc.getMentions();
+    parses = new ArrayList<TreeIndex<String> >(doc.sentences.size());
+    mentionAtNode = new Mention[doc.sentences.size()][];
+    for (Sentence sentence : doc.sentences) {
+      TreeIndex<String> parse = new TreeIndex<String>(sentence.parse, labels);
+      mentionAtNode[parses.size()] = new Mention[parse.size()];
+      parses.add(parse);
+    }
+    nodeOfMention = new int[mentions.size()];
+    for (int i = 0; i < mentions.size(); i++) {
+      Mention m = mentions.get(i);
+      int sentence = doc.indexOfSentence(m.sentence);
+      int node = parses.get(sentence).find(m.beginIndexInclusive, m.endIndexExclusive, m.parse);
+      nodeOfMention[i] = node;
+      if (node >= 0) mentionAtNode[sentence][node] = m;
+    }
   }
 
 	@Override
 	public List<ClusteredMention> runCoreference(Document doc) {
-    Set<Set<Mention> > clusters = new HashSet<Set<Mention> >();
-    List<ClusteredMention> mentions = new ArrayList<ClusteredMention>();
-    parseToMentionMap = new HashMap<Tree<String>, Mention>();
-
-    for (Mention m: doc.getMentions()) {
-      Set<Mention> cluster = new HashSet<Mention>();
-      cluster.add(m);
-      clusters.add(cluster);
-      parseToMentionMap.put(m.parse, m);
+    List<Mention> mentions = doc.getMentions();
+    MentionClusters clusters = new MentionClusters(mentions);
+    Map<String, List<Integer> > byGloss = new HashMap<String, List<Integer> >();
+    Map<String, List<Integer> > byHead = new HashMap<String, List<Integer> >();
+    indexParses(doc);
+
+    for (int i = 0; i < mentions.size(); i++) {
+      Mention m = mentions.get(i);
+      index(byGloss, m.features().gloss, i);
+      index(byHead, m.features().headWord, i);
     }
-    
 
-    for (int i = 1; i <= NUM_PRIORITY; i++) {
-      boolean foundMatch = true;
-
-      while (foundMatch) {
-        foundMatch = false;
-        for (Set<Mention> cluster1: clusters) {
-
-          for (Set<Mention> cluster2: clusters) {
-            if (cluster1.equals(cluster2)) continue;
-
-            if (isMatchWithPriority(doc, cluster1, cluster2, i)) {
-              cluster1.addAll(cluster2);
-              cluster2.removeAll(cluster2);
-              foundMatch = true;
-              break;
-            }
+    // Sieves: two clusters are merged if any pair of their mentions matches, so
+    // one pass over the matching pairs gives the same clusters as merging clusters
+    // until no two match.
+    for (int priority = 1; priority <= NUM_PRIORITY; priority++) {
+      for (int i = 0; i < mentions.size(); i++) {
+        for (int j : candidatesWithPriority(mentions.get(i), priority, byGloss, byHead)) {
+          if (clusters.find(i) == clusters.find(j)) continue;
+          if (isMatchWithPriority(doc, mentions.get(i), mentions.get(j), priority)) {
+            clusters.union(i, j);
           }
         }
       }
-
     }
 
-    for (Set<Mention> cluster1: clusters) {
-      boolean foundMatch = false;
-      for (Mention m1: cluster1) {
-        if (Pronoun.isSomePronoun(m1.gloss())) {
-          Mention match = getHobbsMatch(doc, m1);
+    // Pronouns: each cluster left by the sieves, in document order, is merged with
+    // the cluster of the Hobbs antecedent of its first pronoun which has one in
+    // another cluster. A cluster merged into an earlier one is not visited again.
+    List<Integer> slots = clusters.roots();
+    Map<Integer, Integer> slotOfRoot = new HashMap<Integer, Integer>();
+    for (int slot : slots) slotOfRoot.put(slot, slot);
+    Set<Integer> absorbed = new HashSet<Integer>();
+    for (int slot : slots) {
+      if (absorbed.contains(slot)) continue;
+      int root = clusters.find(slot);
+      if (clusters.pronouns(root) == 0) continue;
+      for (int i : clusters.members(root)) {
+        Mention m1 = mentions.get(i);
+        if (m1.features().isPronoun) {
+          Mention match = getHobbsMatch(doc, i);
           if (match == null) continue;
-          for (Set<Mention> cluster2: clusters) {
-            if (cluster1.equals(cluster2)) continue;
-
-            for (Mention m2: cluster2) {
-              if (m2.equals(match)) {
-                foundMatch = true;
-                break;
-              }
-            }
-            if (foundMatch) {
-              cluster1.addAll(cluster2);
-              cluster2.removeAll(cluster2);
-              break;
-            }
-          }
-        }
-        if (foundMatch) {
+          int matchRoot = clusters.find(doc.indexOfMention(match));
+          if (matchRoot == root) continue;
+          absorbed.add(slotOfRoot.get(matchRoot));
+          slotOfRoot.put(clusters.union(root, matchRoot), slot);
           break;
         }
       }
     }
-    for (Set<Mention> cluster: clusters) {
-      ClusteredMention curCluster = null;
-      // System.out.println("====");
-      for (Mention m: cluster) {
-        // System.out.println(m + " " + m.headToken().posTag());
-        if (curCluster == null) {
-          curCluster = m.markSingleton();
-          mentions.add(curCluster);
-        } else {
-          mentions.add(m.markCoreferent(curCluster));
-        }
-      }
-    }
-    return mentions;
+
+    return clusters.markCoreference();
 	}
 
 }
@@ -5,10 +5,15 @@ import cs224n.util.Pair;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Represent linguistic trees, with each node consisting of a label
  * and a list of children.
@@ -16,11 +21,20 @@ import java.util.Map;
  * @author Gabor Angeli (custom serialization; equals() and hashCode())
  */
 public class Tree<L> implements Serializable, Decodable {
-  private static int nextUniqueIndex = 0;
+  private static final AtomicInteger nextUniqueIndex = new AtomicInteger(0);
 
   private L label;
   private List<Tree<L>> children;
-  private int uniqueIndex = nextUniqueIndex++;
+  private int uniqueIndex = nextUniqueIndex.getAndIncrement();
+  // childOffsets[i] is the number of leaves before child i, and the last
+  // entry is the length of the yield; null for a leaf. This is computed when
+  // the children are set, from the children's own offsets, so a tree must be
+  // built bottom-up and its children list not modified in place afterwards.
+  private int[] childOffsets;
+  // The structural hash of the tree, computed on first use (0 if not yet
+  // computed). Like childOffsets, it is only reset for the node being
+  // modified, so a tree should not be changed once it is used as a key.
+  private transient int hash;
 
 
   public List<Tree<L>> getChildren() {
@@ -28,12 +42,26 @@ public class Tree<L> implements Serializable, Decodable {
   }
   public void setChildren(List<Tree<L>> children) {
     this.children = children;
+    this.hash = 0;
+    computeChildOffsets();
+  }
+
+  private void computeChildOffsets() {
+    if (children.isEmpty()) {
+      childOffsets = null;
+      return;
+    }
+    childOffsets = new int[children.size() + 1];
+    for (int i = 0; i < children.size(); i++) {
+      childOffsets[i+1] = childOffsets[i] + children.get(i).getYieldLength();
+    }
   }
   public L getLabel() {
     return label;
   }
   public void setLabel(L label) {
     this.label = label;
+    this.hash = 0;
   }
 
   /* Returns true at the word(leaf) level of a tree */
@@ -54,11 +82,33 @@ public class Tree<L> implements Serializable, Decodable {
   /* Returns a list of words at the leafs of this tree gotten by
    * traversing from left to right */
   public List<L> getYield() {
-    List<L> yield = new ArrayList<L>();
+    List<L> yield = new ArrayList<L>(getYieldLength());
     appendYield(this, yield);
     return yield;
   }
 
+  /* Returns the number of leaves of this tree; that is, the size of
+   * getYield(), without building the yield */
+  public int getYieldLength() {
+    return childOffsets == null ? 1 : childOffsets[childOffsets.length - 1];
+  }
+
+  /* Returns the index of the first leaf of the i'th child, relative to
+   * the first leaf of this tree */
+  public int getChildStart(int i) {
+    return childOffsets[i];
+  }
+
+  /* Returns the index of the child whose span contains the leaf at the
+   * given index (relative to the first leaf of this tree) */
+  public int getChildIndexAt(int index) {
+    if (isLeaf() || index < 0 || index >= getYieldLength()) {
+      throw new IndexOutOfBoundsException("No leaf " + index + " under " + this);
+    }
+    int found = Arrays.binarySearch(childOffsets, 0, children.size(), index);
+    return found >= 0 ? found : -(found + 1) - 1;
+  }
+
   private static <L> void appendYield(Tree<L> tree, List<L> yield) {
     if (tree.isLeaf()) {
       yield.add(tree.getLabel());
@@ -79,98 +129,162 @@ public class Tree<L> implements Serializable, Decodable {
     return result;
   }
 
-  /* 
+  /*
    * Returns breadth-first traversal of the tree, on all nodes that's on
    * the left of the path given in pathBoundary param. When pathBoundary
    * is null, will return all nodes, ordered by breadth-first traversal.
+   * The nodes of the path are compared by identity.
    */
 
   public static <L> List<Tree<L> > getBFSTraversalWithRightBoundary(
               Tree<L> roottree, List<Tree<L> > pathBoundary) {
-    List<Tree<L> > treesInDepth = new ArrayList<Tree<L> > ();
     List<Tree<L> > result = new ArrayList<Tree<L> >();
-
-    treesInDepth.add(roottree);
-    int depthFromTop = 0;
-    while (true) {
-      treesInDepth = Tree.getChildrenOfAllTrees(treesInDepth);
-      if (treesInDepth.size() == 0) break;
-      depthFromTop++;
-
-      int pIndex = -1;
-      for (int i = 0; i < treesInDepth.size(); i++) {
-        Tree<L> tree = treesInDepth.get(i);
-        if ((pathBoundary != null) &&
-            (depthFromTop < pathBoundary.size()) &&
-            (tree.equals(pathBoundary.get(depthFromTop)))) {
-          if (depthFromTop == pathBoundary.size()) {
-            pIndex = i;
-          } else {
-            pIndex = i+1;
-          }
-          break;
-        }
-        result.add(treesInDepth.get(i));
-      }
-
-      if (pIndex > -1) {
-        for (int i = pIndex; i < treesInDepth.size(); i++) {
-          treesInDepth.remove(pIndex);
-        }
-      }
+    for (Tree<L> tree : iterateBFSWithRightBoundary(roottree, pathBoundary)) {
+      result.add(tree);
     }
     return result;
-
   }
 
-  /* 
+  /*
    * Returns breadth-first traversal of the tree, on all nodes that's on
    * the right of the path given in pathBoundary param. When pathBoundary
-   * is null, will return all nodes, ordered by breadth-first traversal.
+   * is null, will return no nodes.
+   * The nodes of the path are compared by identity.
    */
 
   public static <L> List<Tree<L> > getBFSTraversalWithLeftBoundary(
               Tree<L> roottree, List<Tree<L> > pathBoundary) {
-    List<Tree<L> > treesInDepth = new ArrayList<Tree<L> > ();
     List<Tree<L> > result = new ArrayList<Tree<L> >();
+    for (Tree<L> tree : iterateBFSWithLeftBoundary(roottree, pathBoundary)) {
+      result.add(tree);
+    }
+    return result;
+  }
 
-    treesInDepth.add(roottree);
-    int depthFromTop = 0;
-    while (true) {
-      treesInDepth = Tree.getChildrenOfAllTrees(treesInDepth);
-      if (treesInDepth.size() == 0) break;
-      depthFromTop++;
+  /*
+   * The same traversal as getBFSTraversalWithRightBoundary, computed lazily:
+   * a level of the tree is only expanded once the caller has consumed the
+   * level above it, so stopping early skips the rest of the tree.
+   */
+  public static <L> Iterable<Tree<L> > iterateBFSWithRightBoundary(
+              final Tree<L> roottree, final List<Tree<L> > pathBoundary) {
+    return new Iterable<Tree<L> >() {
+      public Iterator<Tree<L> > iterator() {
+        return new BFSIterator<L>(roottree, pathBoundary, true);
+      }
+    };
+  }
+
+  /*
+   * The same traversal as getBFSTraversalWithLeftBoundary, computed lazily.
+   */
+  public static <L> Iterable<Tree<L> > iterateBFSWithLeftBoundary(
+              final Tree<L> roottree, final List<Tree<L> > pathBoundary) {
+    return new Iterable<Tree<L> >() {
+      public Iterator<Tree<L> > iterator() {
+        return new BFSIterator<L>(roottree, pathBoundary, false);
+      }
+    };
+  }
+
+  /*
+   * Breadth-first traversal bounded by a path, one level at a time. The
+   * current and next level share two buffers which are swapped, rather than
+   * allocating a list per level.
+   */
+  private static class BFSIterator<L> implements Iterator<Tree<L> > {
+    private final List<Tree<L> > pathBoundary;
+    private final boolean rightBoundary;
+    private ArrayList<Tree<L> > level = new ArrayList<Tree<L> >();
+    private ArrayList<Tree<L> > nextLevel = new ArrayList<Tree<L> >();
+    private int position;
+    private int depthFromTop = 0;
+    private int pIndex = -1;
+    private boolean canAdd = false;
+    private Tree<L> next;
+
+    private BFSIterator(Tree<L> roottree, List<Tree<L> > pathBoundary, boolean rightBoundary) {
+      this.pathBoundary = pathBoundary;
+      this.rightBoundary = rightBoundary;
+      level.add(roottree);
+      position = level.size();  // (the root itself is not part of the traversal)
+      next = fetch();
+    }
 
-      int pIndex = -1;
-      boolean canAdd = false;
-      for (int i = 0; i < treesInDepth.size(); i++) {
-        Tree<L> tree = treesInDepth.get(i);
-        if (canAdd) {
-          result.add(treesInDepth.get(i));
+    private boolean onPath(Tree<L> tree) {
+      return (pathBoundary != null) &&
+          (depthFromTop < pathBoundary.size()) &&
+          (tree == pathBoundary.get(depthFromTop));
+    }
+
+    private boolean advance() {
+      //--Prune Current Level
+      if (pIndex > -1) {
+        if (rightBoundary) {
+          // (as in the original list-based traversal, only the first half of
+          // the nodes right of the path, rounded up, are dropped)
+          int removed = (level.size() - pIndex + 1) / 2;
+          level.subList(pIndex, pIndex + removed).clear();
+        } else {
+          level.subList(0, pIndex + 1).clear();
         }
+      }
+      //--Expand
+      nextLevel.clear();
+      for (Tree<L> parent : level) {
+        nextLevel.addAll(parent.getChildren());
+      }
+      ArrayList<Tree<L> > tmp = level;
+      level = nextLevel;
+      nextLevel = tmp;
+      depthFromTop++;
+      position = 0;
+      pIndex = -1;
+      canAdd = false;
+      return !level.isEmpty();
+    }
 
-        if ((pathBoundary != null) &&
-            (depthFromTop < pathBoundary.size()) &&
-            (tree.equals(pathBoundary.get(depthFromTop)))) {
-          if (depthFromTop == pathBoundary.size()) {
-            pIndex = i;
-          } else {
-            pIndex = i - 1;
+    private Tree<L> fetch() {
+      while (true) {
+        if (position >= level.size()) {
+          if (!advance()) return null;
+          continue;
+        }
+        Tree<L> tree = level.get(position++);
+        if (rightBoundary) {
+          if (onPath(tree)) {
+            pIndex = position;
+            position = level.size();
+            continue;
+          }
+          return tree;
+        } else {
+          boolean add = canAdd;
+          if (onPath(tree)) {
+            pIndex = position - 2;
+            canAdd = true;
           }
-          canAdd = true;
+          if (add) return tree;
         }
       }
+    }
 
+    public boolean hasNext() {
+      return next != null;
+    }
 
-      if (pIndex > -1) {
-        for (int i = 0; i <= pIndex; i++) {
-          treesInDepth.remove(0);
-        }
-      }
+    public Tree<L> next() {
+      if (next == null) throw new NoSuchElementException();
+      Tree<L> rtn = next;
+      next = fetch();
+      return rtn;
     }
-    return result;
 
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
   }
+
   /* Returns a list of the preterminals gotten by traversing from left
    * to right.  This is effectively an POS tagging for the words that
    * tree represents. */
@@ -218,6 +332,15 @@ public class Tree<L> implements Serializable, Decodable {
       traversal.add(tree);
   }
 
+  /* Returns the parent of every node of the tree except the root. The map
+   * is keyed by node identity, so structurally identical subtrees (e.g. two
+   * "(NP (PRP it))" nodes) each get their own entry */
+  public static <L> Map<Tree<L>, Tree<L> > extractParentRelationship(Tree<L> tree) {
+    Map<Tree<L>, Tree<L> > parentInfo = new IdentityHashMap<Tree<L>, Tree<L> >();
+    extractParentRelationship(tree, parentInfo);
+    return parentInfo;
+  }
+
   public static <L> void extractParentRelationship(Tree<L> tree, Map<Tree<L>, Tree<L> > parentInfo) {
     for (Tree<L> child : tree.getChildren()) {
       parentInfo.put(child, tree);
@@ -232,6 +355,7 @@ public class Tree<L> implements Serializable, Decodable {
   }
 
   private int setWordsHelper(List<L> words, int wordNum) {
+    hash = 0;
     if (isLeaf()) {
       label = words.get(wordNum);
       return wordNum + 1;
@@ -316,22 +440,10 @@ public class Tree<L> implements Serializable, Decodable {
       return new LinkedList<Pair<L,Integer>>();
     }
     //--Recursive Case
-    //(get children)
-    List<Tree<L>> children = this.getChildren();
     //(get child with relevant span)
-    int yieldSoFar = 0;
-    int childIndex = 0;
-    int lastYield = 0;
-    while(yieldSoFar <= index){
-      lastYield = children.get(childIndex).getYield().size();
-      yieldSoFar += lastYield;
-      childIndex += 1;
-    }
-    //(move back one step)
-    childIndex -= 1;
-    yieldSoFar -= lastYield;
+    int childIndex = getChildIndexAt(index);
     //(get rest of path)
-    LinkedList<Pair<L,Integer>> restOfPath = children.get(childIndex).pathToIndex(index - yieldSoFar);
+    LinkedList<Pair<L,Integer>> restOfPath = children.get(childIndex).pathToIndex(index - getChildStart(childIndex));
     //(add this node)
     restOfPath.addFirst(Pair.make(this.label, this.uniqueIndex));
     //(return)
@@ -374,8 +486,10 @@ public class Tree<L> implements Serializable, Decodable {
 
   @SuppressWarnings({"unchecked"})
   public boolean equals(Object o){
+    if(o == this){ return true; }
     if(o instanceof Tree) {
       Tree<L> other = (Tree<L>) o;
+      if(other.hashCode() != this.hashCode()){ return false; }
       if(!other.getLabel().equals(this.getLabel())){ return false; }
       if(other.children.size() != this.children.size()){ return false; }
       for(int i=0; i<children.size(); i++){
@@ -388,13 +502,23 @@ public class Tree<L> implements Serializable, Decodable {
   }
 
   public int hashCode(){
-    return label.hashCode() ^ (children.size()<<16);
+    int h = hash;
+    if(h == 0){
+      h = label.hashCode();
+      for(Tree<L> child : children){
+        h = 31 * h + child.hashCode();
+      }
+      if(h == 0){ h = 1; }
+      hash = h;
+    }
+    return h;
   }
 
   /* The leaf constructor. */
   public Tree(L label, List<Tree<L>> children) {
     this.label = label;
     this.children = children;
+    computeChildOffsets();
   }
 
   public Tree(L label) {
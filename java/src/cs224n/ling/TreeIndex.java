@@ -0,0 +1,275 @@
+package cs224n.ling;
+
+import cs224n.util.Indexer;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only index over the nodes of a tree, for navigating the tree without
+ * hashing Tree objects.
+ *
+ * Nodes are numbered in pre-order (the root is node 0). For every node, the index
+ * stores its parent, depth, children, label id and the span of leaves it covers,
+ * so moving around the tree is a constant time array lookup. Node ids are only
+ * meaningful within the index that assigned them.
+ */
+public class TreeIndex<L> {
+  private final List<Tree<L>> nodes = new ArrayList<Tree<L>>();
+  private final Map<Tree<L>,Integer> ids = new IdentityHashMap<Tree<L>,Integer>();
+  private final int[] parent;
+  private final int[] depth;
+  private final int[] begin;
+  private final int[] end;
+  private final int[] label;
+  private final int[][] children;
+  private final int[] leaves;
+
+  /**
+   * Index a tree.
+   * @param root The tree to index
+   * @param labels The indexer assigning ids to labels; new labels are added to it.
+   *               Sharing an indexer between trees gives their labels the same ids.
+   */
+  public TreeIndex(Tree<L> root, Indexer<L> labels){
+    //--Number Nodes
+    collect(root);
+    int size = nodes.size();
+    this.parent = new int[size];
+    this.depth = new int[size];
+    this.begin = new int[size];
+    this.end = new int[size];
+    this.label = new int[size];
+    this.children = new int[size][];
+    //--Fill Arrays
+    List<Integer> leafList = new ArrayList<Integer>();
+    parent[0] = -1;
+    for(int id=0; id<size; id++){
+      Tree<L> node = nodes.get(id);
+      label[id] = labels.addAndGetIndex(node.getLabel());
+      List<Tree<L>> kids = node.getChildren();
+      children[id] = new int[kids.size()];
+      for(int k=0; k<kids.size(); k++){
+        int child = ids.get(kids.get(k));
+        children[id][k] = child;
+        parent[child] = id;
+        depth[child] = depth[id] + 1;
+      }
+      if(kids.isEmpty()){ leafList.add(id); }
+    }
+    //--Spans
+    this.leaves = new int[leafList.size()];
+    for(int i=0; i<leaves.length; i++){ leaves[i] = leafList.get(i); }
+    for(int i=0; i<leaves.length; i++){
+      begin[leaves[i]] = i;
+      end[leaves[i]] = i + 1;
+    }
+    for(int id=size-1; id>=0; id--){
+      if(children[id].length > 0){
+        begin[id] = begin[children[id][0]];
+        end[id] = end[children[id][children[id].length-1]];
+      }
+    }
+  }
+
+  private void collect(Tree<L> node){
+    ids.put(node, nodes.size());
+    nodes.add(node);
+    for(Tree<L> child : node.getChildren()){ collect(child); }
+  }
+
+  /** The number of nodes in the tree */
+  public int size(){ return nodes.size(); }
+  /** The Tree object for a node */
+  public Tree<L> node(int id){ return nodes.get(id); }
+  /** The id of a Tree object in this tree (compared by identity), or -1 if it is not part of the tree */
+  public int id(Tree<L> node){
+    Integer id = ids.get(node);
+    return id == null ? -1 : id;
+  }
+  /** The parent of a node, or -1 for the root */
+  public int parent(int id){ return parent[id]; }
+  /** The distance from the root to a node */
+  public int depth(int id){ return depth[id]; }
+  /** The index of the first leaf under a node */
+  public int begin(int id){ return begin[id]; }
+  /** The index after the last leaf under a node */
+  public int end(int id){ return end[id]; }
+  /** The id of the label of a node, as given by the label indexer */
+  public int label(int id){ return label[id]; }
+  /** The children of a node; do not modify the returned array */
+  public int[] children(int id){ return children[id]; }
+  /** The number of leaves in the tree */
+  public int numLeaves(){ return leaves.length; }
+  /** The id of the i'th leaf */
+  public int leaf(int i){ return leaves[i]; }
+
+  /**
+   * Find the node covering a span, whose subtree is equal to a given tree.
+   * This locates a tree fragment (e.g. the parse of a mention) inside the full tree.
+   * @param begin The index of the first leaf of the span
+   * @param end The index after the last leaf of the span
+   * @param structure The subtree to match (by equals()), or null to take the highest node covering the span
+   * @return The id of the node, or -1 if no node matches
+   */
+  public int find(int begin, int end, Tree<L> structure){
+    if(begin < 0 || begin >= leaves.length){ return -1; }
+    int rtn = -1;
+    for(int id=leaves[begin]; id >= 0 && this.begin[id] == begin && this.end[id] <= end; id=parent[id]){
+      if(this.end[id] == end){
+        if(structure == null){
+          rtn = id;
+        } else if(nodes.get(id).equals(structure)){
+          return id;
+        }
+      }
+    }
+    return rtn;
+  }
+
+  /**
+   * The path between a node and one of its descendants
+   * @param top The ancestor
+   * @param bottom The descendant
+   * @return The node ids from top to bottom inclusive
+   */
+  public int[] path(int top, int bottom){
+    int[] rtn = new int[depth[bottom] - depth[top] + 1];
+    int id = bottom;
+    for(int i=rtn.length-1; i>=0; i--){
+      rtn[i] = id;
+      id = parent[id];
+    }
+    if(rtn[0] != top){ throw new IllegalArgumentException("Node " + bottom + " is not under node " + top); }
+    return rtn;
+  }
+
+  /**
+   * A breadth-first traversal over the nodes of a TreeIndex, bounded by a path down
+   * from its root; the node id version of Tree.iterateBFSWithRightBoundary() and
+   * Tree.iterateBFSWithLeftBoundary(). Levels are expanded lazily into two buffers
+   * which are reused from one traversal to the next, so a traversal allocates nothing
+   * once the buffers have grown to fit the widest level seen.
+   * A typical use, stopping at the first match, looks like:
+   * <pre>
+   *   traversal.startRightOf(index, root, path);
+   *   for(int node = traversal.next(); node >= 0; node = traversal.next()){
+   *     if(matches(node)){ return node; }
+   *   }
+   * </pre>
+   */
+  public static class Traversal {
+    private TreeIndex<?> index;
+    private int[] path;
+    private boolean rightBoundary;
+    private int[] level = new int[16];
+    private int[] nextLevel = new int[16];
+    private int levelSize;
+    private int position;
+    private int depthFromTop;
+    private int pIndex;
+    private boolean canAdd;
+
+    /**
+     * Start traversing the nodes below a root which are left of a path
+     * @param index The tree to traverse
+     * @param root The node to start from (it is not itself visited)
+     * @param path A path down from the root (path[0] is the root), or null to visit every node
+     */
+    public void startLeftOf(TreeIndex<?> index, int root, int[] path){
+      start(index, root, path, true);
+    }
+
+    /**
+     * Start traversing the nodes below a root which are right of a path
+     * @param index The tree to traverse
+     * @param root The node to start from (it is not itself visited)
+     * @param path A path down from the root (path[0] is the root)
+     */
+    public void startRightOf(TreeIndex<?> index, int root, int[] path){
+      start(index, root, path, false);
+    }
+
+    private void start(TreeIndex<?> index, int root, int[] path, boolean rightBoundary){
+      this.index = index;
+      this.path = path;
+      this.rightBoundary = rightBoundary;
+      level[0] = root;
+      levelSize = 1;
+      position = levelSize;  // (the root itself is not visited)
+      depthFromTop = 0;
+      pIndex = -1;
+      canAdd = false;
+    }
+
+    private boolean onPath(int node){
+      return path != null && depthFromTop < path.length && node == path[depthFromTop];
+    }
+
+    private boolean advance(){
+      //--Prune Current Level
+      if(pIndex > -1){
+        if(rightBoundary){
+          //(Tree's traversal drops only the first half, rounded up, of the nodes
+          // to the right of the path; drop the same nodes)
+          int removed = (levelSize - pIndex + 1) / 2;
+          System.arraycopy(level, pIndex + removed, level, pIndex, levelSize - pIndex - removed);
+          levelSize -= removed;
+        } else {
+          System.arraycopy(level, pIndex + 1, level, 0, levelSize - pIndex - 1);
+          levelSize -= pIndex + 1;
+        }
+      }
+      //--Expand
+      int count = 0;
+      for(int i=0; i<levelSize; i++){ count += index.children[level[i]].length; }
+      if(nextLevel.length < count){ nextLevel = new int[Math.max(count, 2 * nextLevel.length)]; }
+      int k = 0;
+      for(int i=0; i<levelSize; i++){
+        int[] kids = index.children[level[i]];
+        System.arraycopy(kids, 0, nextLevel, k, kids.length);
+        k += kids.length;
+      }
+      int[] tmp = level;
+      level = nextLevel;
+      nextLevel = tmp;
+      levelSize = count;
+      depthFromTop += 1;
+      position = 0;
+      pIndex = -1;
+      canAdd = false;
+      return levelSize > 0;
+    }
+
+    /**
+     * The next node of the traversal
+     * @return The id of the node, or -1 if the traversal is finished
+     */
+    public int next(){
+      while(true){
+        if(position >= levelSize){
+          if(!advance()){ return -1; }
+          continue;
+        }
+        int node = level[position++];
+        if(rightBoundary){
+          if(onPath(node)){
+            pIndex = position;
+            position = levelSize;
+            continue;
+          }
+          return node;
+        } else {
+          boolean add = canAdd;
+          if(onPath(node)){
+            pIndex = position - 2;
+            canAdd = true;
+          }
+          if(add){ return node; }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,292 @@
+package cs224n.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A read-only list whose elements are computed on demand by a
+ * {@link WeakReferenceList.RefreshFunction}, and kept in a bounded cache.
+ *
+ * Unlike WeakReferenceList, elements survive garbage collection until the cache
+ * decides to evict them. The cache can be bounded by a number of entries, and/or
+ * by an estimate of the bytes used by the cached elements; the least recently used
+ * elements are evicted first. With the SOFT eviction policy, elements are in addition
+ * only softly reachable, so that the garbage collector may reclaim them under memory
+ * pressure; entries whose element was reclaimed are dropped (and stop counting against
+ * the bounds) before anything live is evicted.
+ *
+ * Optionally, the next few elements after the one requested can be computed on a
+ * background thread, which hides the cost of computing an element when iterating
+ * through the list in order.
+ */
+public class BoundedCacheList<E> extends AbstractList<E> {
+
+  /**
+   * How cached elements are held.
+   * <ul>
+   *   <li><b>LRU: </b> Strong references; evicted only when the cache is over its bounds</li>
+   *   <li><b>SOFT: </b> Soft references; evicted when over bounds, or by the garbage collector</li>
+   * </ul>
+   */
+  public static enum Eviction { LRU, SOFT }
+
+  /**
+   * Estimates the memory footprint of an element, for caches bounded by bytes.
+   */
+  public static interface SizeEstimator<E> {
+    public long estimateBytes(E element);
+  }
+
+  private static class Entry<E> {
+    private final int index;
+    private final E strong;
+    private final SoftReference<E> soft;
+    private final long bytes;
+    private boolean cached = true;  // (false once removed from the cache)
+    private Entry(int index, E value, Eviction eviction, long bytes, ReferenceQueue<E> collected){
+      this.index = index;
+      this.strong = eviction == Eviction.LRU ? value : null;
+      this.soft = eviction == Eviction.SOFT ? new EntryReference<E>(value, collected, this) : null;
+      this.bytes = bytes;
+    }
+    private E get(){ return strong != null ? strong : (soft == null ? null : soft.get()); }
+  }
+
+  /**
+   * A soft reference which knows its entry, so that the entry can be dropped once
+   * the garbage collector has cleared it
+   */
+  private static class EntryReference<E> extends SoftReference<E> {
+    private final Entry<E> entry;
+    private EntryReference(E value, ReferenceQueue<E> collected, Entry<E> entry){
+      super(value, collected);
+      this.entry = entry;
+    }
+  }
+
+  private final WeakReferenceList.RefreshFunction<E> refresh;
+  private final Eviction eviction;
+  private final int maxEntries;
+  private final long maxBytes;
+  private final SizeEstimator<E> estimator;
+  private final int prefetch;
+
+  private final LinkedHashMap<Integer,Entry<E>> cache = new LinkedHashMap<Integer,Entry<E>>(16, 0.75f, true);
+  private final Map<Integer,Future<E>> pending = new HashMap<Integer,Future<E>>();
+  private final ReferenceQueue<E> collected = new ReferenceQueue<E>();
+  private final BitSet everLoaded = new BitSet();
+  private ExecutorService prefetcher = null;
+  private long bytesCached = 0;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long reloads = 0;
+  private long prefetched = 0;
+
+  /**
+   * Create a cache bounded by the number of entries, with no prefetching.
+   * @param refresh The function computing the elements of the list
+   * @param eviction How elements are held in the cache
+   * @param maxEntries The maximum number of cached elements, or 0 for no bound
+   */
+  public BoundedCacheList(WeakReferenceList.RefreshFunction<E> refresh, Eviction eviction, int maxEntries){
+    this(refresh, eviction, maxEntries, 0, null, 0);
+  }
+
+  /**
+   * Create a cache.
+   * @param refresh The function computing the elements of the list
+   * @param eviction How elements are held in the cache
+   * @param maxEntries The maximum number of cached elements, or 0 for no bound
+   * @param maxBytes The maximum estimated size of the cached elements, or 0 for no bound
+   * @param estimator The estimator of the size of an element; required if maxBytes is set
+   * @param prefetch The number of elements after a requested element to compute in the background
+   */
+  public BoundedCacheList(WeakReferenceList.RefreshFunction<E> refresh, Eviction eviction,
+                          int maxEntries, long maxBytes, SizeEstimator<E> estimator, int prefetch){
+    if(maxBytes > 0 && estimator == null){ throw new IllegalArgumentException("Must provide a size estimator to bound a cache by bytes"); }
+    if(maxEntries < 0 || maxBytes < 0 || prefetch < 0){ throw new IllegalArgumentException("Cache bounds must be non-negative"); }
+    this.refresh = refresh;
+    this.eviction = eviction;
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.estimator = estimator;
+    this.prefetch = prefetch;
+  }
+
+  public int size() {
+    return refresh.size();
+  }
+
+  public E get(int i) {
+    if(i < 0 || i >= size()){ throw new IndexOutOfBoundsException(""+i); }
+    //--Lookup
+    E rtn = null;
+    Future<E> future = null;
+    synchronized(this){
+      Entry<E> entry = cache.get(i);
+      if(entry != null){
+        rtn = entry.get();
+        if(rtn == null){ uncache(i); } //(reference was collected)
+      }
+      if(rtn == null){ future = pending.get(i); }
+      if(rtn != null || future != null){
+        hits += 1;
+      } else {
+        misses += 1;
+        if(everLoaded.get(i)){ reloads += 1; }
+      }
+    }
+    //--Compute
+    if(rtn == null){
+      rtn = future != null ? await(future) : refresh.get(i);
+      synchronized(this){ cache(i, rtn); }
+    }
+    //--Prefetch
+    if(prefetch > 0){ prefetchAfter(i); }
+    return rtn;
+  }
+
+  private E await(Future<E> future){
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private void cache(int i, E value){
+    Entry<E> existing = cache.get(i);
+    if(existing != null && existing.get() == value){ return; }
+    if(existing != null){ uncache(i); }
+    long bytes = estimator == null ? 0 : estimator.estimateBytes(value);
+    cache.put(i, new Entry<E>(i, value, eviction, bytes, collected));
+    bytesCached += bytes;
+    everLoaded.set(i);
+    //(drop entries the garbage collector reclaimed, before evicting live ones)
+    expunge();
+    //(evict least recently used; always keep the newest element)
+    Iterator<Map.Entry<Integer,Entry<E>>> iter = cache.entrySet().iterator();
+    while(cache.size() > 1 &&
+        ((maxEntries > 0 && cache.size() > maxEntries) || (maxBytes > 0 && bytesCached > maxBytes))){
+      Entry<E> eldest = iter.next().getValue();
+      eldest.cached = false;
+      bytesCached -= eldest.bytes;
+      iter.remove();
+    }
+  }
+
+  private void uncache(int i){
+    Entry<E> removed = cache.remove(i);
+    if(removed != null){
+      removed.cached = false;
+      bytesCached -= removed.bytes;
+    }
+  }
+
+  /*
+   * Remove the entries whose soft references were cleared by the garbage collector
+   * (without reordering the rest, as looking them up would)
+   */
+  private void expunge(){
+    Reference<? extends E> ref;
+    while((ref = collected.poll()) != null){
+      Entry<?> entry = ((EntryReference<?>) ref).entry;
+      if(entry.cached){ uncache(entry.index); }
+    }
+  }
+
+  private synchronized void prefetchAfter(int i){
+    if(prefetcher == null){
+      prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory(){
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "BoundedCacheList prefetch");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    for(int j=i+1; j<=i+prefetch && j<size(); j++){
+      Entry<E> entry = cache.get(j);
+      if(pending.containsKey(j) || (entry != null && entry.get() != null)){ continue; }
+      final int index = j;
+      prefetched += 1;
+      pending.put(index, prefetcher.submit(new Callable<E>(){
+        public E call() {
+          try {
+            E value = refresh.get(index);
+            synchronized(BoundedCacheList.this){ cache(index, value); }
+            return value;
+          } finally {
+            synchronized(BoundedCacheList.this){ pending.remove(index); }
+          }
+        }
+      }));
+    }
+  }
+
+  /**
+   * Stop the prefetching thread, if one was started.
+   * The list remains usable, but will restart the thread if it prefetches again.
+   */
+  public synchronized void shutdown(){
+    if(prefetcher != null){
+      prefetcher.shutdownNow();
+      prefetcher = null;
+      pending.clear();
+    }
+  }
+
+  /**
+   * The number of requests answered from the cache (or from a pending prefetch)
+   */
+  public synchronized long hits(){ return hits; }
+
+  /**
+   * The number of requests which had to compute their element
+   */
+  public synchronized long misses(){ return misses; }
+
+  /**
+   * The number of misses for elements which had been computed before, but were evicted
+   */
+  public synchronized long reloads(){ return reloads; }
+
+  /**
+   * The number of elements currently cached
+   */
+  public synchronized int cachedEntries(){
+    expunge();
+    return cache.size();
+  }
+
+  /**
+   * The estimated size of the currently cached elements
+   */
+  public synchronized long cachedBytes(){
+    expunge();
+    return bytesCached;
+  }
+
+  /**
+   * A human-readable summary of the cache's performance
+   * @return A String summarizing the cache counters
+   */
+  public synchronized String cacheStatistics(){
+    expunge();
+    StringBuilder b = new StringBuilder();
+    b.append("hits=").append(hits)
+        .append(" misses=").append(misses)
+        .append(" reloads=").append(reloads)
+        .append(" prefetched=").append(prefetched)
+        .append(" cached=").append(cache.size());
+    if(estimator != null){ b.append(" (~").append(bytesCached / 1024).append("KB)"); }
+    return b.toString();
+  }
+}
@@ -0,0 +1,331 @@
+package cs224n.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A map from objects to doubles, with the same methods as Counter, but stored in
+ * an open addressing hash table of keys and primitive counts. Getting, setting
+ * and incrementing a count allocate nothing once the table is large enough.
+ * Keys cannot be removed, and the iteration order of keySet() is arbitrary.
+ * Objects not in the counter will return a count of zero.
+ */
+public class DoubleCounter <E> implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final Object NULL_KEY = new Object();  // (stands in for the null key, as null marks an empty slot)
+
+  //(the table is serialized as its entries, as the keys' hash codes may differ when read back)
+  private transient Object[] keys;
+  private transient double[] values;
+  private transient int mask;
+  private transient int size = 0;
+
+  /**
+   * The elements in the counter.
+   *
+   * @return set of keys
+   */
+  public Set<E> keySet() {
+    return new AbstractSet<E>() {
+      public Iterator<E> iterator() {
+        return new Iterator<E>() {
+          private int slot = next(0);
+          private int next(int from) {
+            while (from < keys.length && keys[from] == null) from++;
+            return from;
+          }
+          public boolean hasNext() { return slot < keys.length; }
+          public E next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            E key = keyAt(slot);
+            slot = next(slot + 1);
+            return key;
+          }
+          public void remove() { throw new UnsupportedOperationException(); }
+        };
+      }
+      public int size() { return size; }
+      @SuppressWarnings("unchecked")
+      public boolean contains(Object o) { return containsKey((E) o); }
+    };
+  }
+
+  /**
+   * The number of entries in the counter (not the total count -- use totalCount() instead).
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * True if there are no entries in the counter (false does not mean totalCount > 0)
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns whether the counter contains the given key.  Note that this is the
+   * way to distinguish keys which are in the counter with count zero, and those
+   * which are not in the counter (and will therefore return count zero from
+   * getCount().
+   *
+   * @param key
+   * @return whether the counter contains the key
+   */
+  public boolean containsKey(E key) {
+    return keys[slot(key)] != null;
+  }
+
+  /**
+   * Get the count of the element, or zero if the element is not in the
+   * counter.
+   *
+   * @param key
+   */
+  public double getCount(E key) {
+    return values[slot(key)];  // (empty slots always hold a count of zero)
+  }
+
+  /**
+   * Set the count for the given key, clobbering any previous count.
+   *
+   * @param key
+   * @param count
+   */
+  public void setCount(E key, double count) {
+    int slot = insert(key);  // (before reading values, which insert() may replace)
+    values[slot] = count;
+  }
+
+  /**
+   * Increment a key's count by the given amount.
+   *
+   * @param key
+   * @param increment
+   */
+  public void incrementCount(E key, double increment) {
+    int slot = insert(key);  // (before reading values, which insert() may replace)
+    values[slot] += increment;
+  }
+
+  /**
+   * Increment each element in a given collection by a given amount.
+   */
+  public void incrementAll(Collection<? extends E> collection, double count) {
+    for (E key : collection) {
+      incrementCount(key, count);
+    }
+  }
+
+  public <T extends E> void incrementAll(DoubleCounter<T> counter) {
+    for (int slot = 0; slot < counter.keys.length; slot++) {
+      if (counter.keys[slot] != null) incrementCount(counter.keyAt(slot), counter.values[slot]);
+    }
+  }
+
+  public <T extends E> void incrementAll(Counter<T> counter) {
+    for (T key : counter.keySet()) {
+      incrementCount(key, counter.getCount(key));
+    }
+  }
+
+  /**
+   * Finds the total of all counts in the counter.  This implementation iterates
+   * through the entire counter every time this method is called.
+   *
+   * @return the counter's total
+   */
+  public double totalCount() {
+    double total = 0.0;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != null) total += values[slot];
+    }
+    return total;
+  }
+
+  /**
+   * Finds the key with maximum count.  This is a linear operation, and ties are broken arbitrarily.
+   *
+   * @return a key with maximum count, or null if the counter is empty
+   */
+  public E argMax() {
+    double maxCount = Double.NEGATIVE_INFINITY;
+    int maxSlot = -1;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != null && (values[slot] > maxCount || maxSlot < 0)) {
+        maxSlot = slot;
+        maxCount = values[slot];
+      }
+    }
+    return maxSlot < 0 ? null : keyAt(maxSlot);
+  }
+
+  /**
+   * Returns a string representation with the keys ordered by decreasing
+   * counts.
+   *
+   * @return string representation
+   */
+  public String toString() {
+    return toString(size);
+  }
+
+  /**
+   * Returns a string representation which includes no more than the
+   * maxKeysToPrint elements with largest counts.
+   *
+   * @param maxKeysToPrint
+   * @return partial string representation
+   */
+  public String toString(int maxKeysToPrint) {
+    return asPriorityQueue().toString(maxKeysToPrint);
+  }
+
+  /**
+   * Builds a priority queue whose elements are the counter's elements, and
+   * whose priorities are those elements' counts in the counter.
+   */
+  public PriorityQueue<E> asPriorityQueue() {
+    PriorityQueue<E> pq = new PriorityQueue<E>(size);
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != null) pq.add(keyAt(slot), values[slot]);
+    }
+    return pq;
+  }
+
+  /**
+   * Copies this counter into a (HashMap backed) Counter.
+   */
+  public Counter<E> asCounter() {
+    Counter<E> counter = new Counter<E>();
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != null) counter.setCount(keyAt(slot), values[slot]);
+    }
+    return counter;
+  }
+
+  // -----------------------------------------------------------------------
+
+  @SuppressWarnings("unchecked")
+  private E keyAt(int slot) {
+    Object key = keys[slot];
+    return key == NULL_KEY ? null : (E) key;
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /*
+   * The slot holding a key, or the empty slot where it would be inserted
+   */
+  private int slot(Object key) {
+    if (key == null) key = NULL_KEY;
+    int slot = hash(key) & mask;
+    Object found;
+    while ((found = keys[slot]) != null && found != key && !found.equals(key)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /*
+   * The slot holding a key, inserting it with a count of zero if it is not present
+   */
+  private int insert(E key) {
+    int slot = slot(key);
+    if (keys[slot] == null) {
+      if (2 * (size + 1) > keys.length) {
+        grow();
+        slot = slot(key);
+      }
+      keys[slot] = key == null ? NULL_KEY : key;
+      size += 1;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    Object[] oldKeys = keys;
+    double[] oldValues = values;
+    allocate(2 * oldKeys.length);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (keys[slot] != null) slot = (slot + 1) & mask;
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /*
+   * The smallest table at most half full with a number of keys
+   */
+  private static int capacityFor(int expectedSize) {
+    int capacity = 4;
+    while (capacity < 2 * expectedSize) capacity <<= 1;
+    return capacity;
+  }
+
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    values = new double[capacity];
+    mask = capacity - 1;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != null) {
+        out.writeObject(keyAt(slot));
+        out.writeDouble(values[slot]);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int entries = in.readInt();
+    allocate(capacityFor(entries));
+    for (int i = 0; i < entries; i++) {
+      E key = (E) in.readObject();
+      setCount(key, in.readDouble());
+    }
+  }
+
+  public DoubleCounter() {
+    this(8);
+  }
+
+  /**
+   * Create a counter with room for a number of keys before its table grows
+   *
+   * @param expectedSize The number of keys expected
+   */
+  public DoubleCounter(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  public static void main(String[] args) {
+    DoubleCounter<String> counter = new DoubleCounter<String>();
+    System.out.println(counter);
+    counter.incrementCount("planets", 7);
+    System.out.println(counter);
+    counter.incrementCount("planets", 1);
+    System.out.println(counter);
+    counter.setCount("suns", 1);
+    System.out.println(counter);
+    counter.setCount("aliens", 0);
+    System.out.println(counter);
+    System.out.println(counter.toString(2));
+    System.out.println("Total: " + counter.totalCount());
+  }
+}
@@ -0,0 +1,128 @@
+package cs224n.util;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains counts of (key, value) pairs, with the same methods as CounterMap,
+ * but with a DoubleCounter over values for every key, so that counts are stored
+ * as primitives and incrementing an existing pair allocates nothing.
+ */
+public class DoubleCounterMap<K, V> {
+
+  private Map<K, DoubleCounter<V>> counterMap;
+
+  // -----------------------------------------------------------------------
+
+  public DoubleCounterMap() {
+    this(new MapFactory.HashMapFactory<K, DoubleCounter<V>>());
+  }
+
+  public DoubleCounterMap(MapFactory<K, DoubleCounter<V>> outerMF) {
+    counterMap = outerMF.buildMap();
+  }
+
+  // -----------------------------------------------------------------------
+
+  protected DoubleCounter<V> ensureCounter(K key) {
+    DoubleCounter<V> valueCounter = counterMap.get(key);
+    if (valueCounter == null) {
+      valueCounter = new DoubleCounter<V>();
+      counterMap.put(key, valueCounter);
+    }
+    return valueCounter;
+  }
+
+  /**
+   * Returns the keys that have been inserted into this DoubleCounterMap.
+   */
+  public Set<K> keySet() {
+    return counterMap.keySet();
+  }
+
+  /**
+   * Sets the count for a particular (key, value) pair.
+   */
+  public void setCount(K key, V value, double count) {
+    ensureCounter(key).setCount(value, count);
+  }
+
+  /**
+   * Increments the count for a particular (key, value) pair.
+   */
+  public void incrementCount(K key, V value, double count) {
+    ensureCounter(key).incrementCount(value, count);
+  }
+
+  /**
+   * Gets the count of the given (key, value) entry, or zero if that
+   * entry is not present.  Does not create any objects.
+   */
+  public double getCount(K key, V value) {
+    DoubleCounter<V> valueCounter = counterMap.get(key);
+    if (valueCounter == null)
+      return 0.0;
+    return valueCounter.getCount(value);
+  }
+
+  /**
+   * Gets the sub-counter for the given key.  If there is none, a
+   * counter is created for that key, and installed in the map.
+   */
+  public DoubleCounter<V> getCounter(K key) {
+    return ensureCounter(key);
+  }
+
+  /**
+   * Returns the total of all counts in sub-counters.  This
+   * implementation is linear; it recalculates the total each time.
+   */
+  public double totalCount() {
+    double total = 0.0;
+    for (DoubleCounter<V> counter : counterMap.values()) {
+      total += counter.totalCount();
+    }
+    return total;
+  }
+
+  /**
+   * Returns the total number of (key, value) entries in the
+   * map (not their total counts).
+   */
+  public int totalSize() {
+    int total = 0;
+    for (DoubleCounter<V> counter : counterMap.values()) {
+      total += counter.size();
+    }
+    return total;
+  }
+
+  /**
+   * The number of keys in this map (not the number of
+   * key-value entries -- use totalSize() for that)
+   */
+  public int size() {
+    return counterMap.size();
+  }
+
+  /**
+   * True if there are no entries in the map (false does not
+   * mean totalCount > 0)
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[\n");
+    for (Map.Entry<K, DoubleCounter<V>> entry : counterMap.entrySet()) {
+      sb.append("  ");
+      sb.append(entry.getKey());
+      sb.append(" -> ");
+      sb.append(entry.getValue());
+      sb.append("\n");
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+}
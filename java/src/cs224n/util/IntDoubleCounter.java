@@ -0,0 +1,275 @@
+package cs224n.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A counter over non-negative int keys, such as the ids assigned by an Indexer,
+ * stored in an open addressing hash table of primitive keys and counts.
+ * It has the methods of Counter, taking and returning ints in place of keys;
+ * nothing is boxed, and getting, setting and incrementing a count allocate nothing
+ * once the table is large enough. Keys cannot be removed.
+ * Keys not in the counter will return a count of zero.
+ */
+public class IntDoubleCounter implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int EMPTY = -1;
+
+  private int[] keys;
+  private double[] values;
+  private int mask;
+  private int size = 0;
+
+  /**
+   * The keys in the counter, in no particular order.
+   *
+   * @return a fresh array of the keys
+   */
+  public int[] keys() {
+    int[] rtn = new int[size];
+    int i = 0;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != EMPTY) rtn[i++] = keys[slot];
+    }
+    return rtn;
+  }
+
+  /**
+   * The number of entries in the counter (not the total count -- use totalCount() instead).
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * True if there are no entries in the counter (false does not mean totalCount > 0)
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns whether the counter contains the given key, to distinguish keys
+   * with a count of zero from keys which are not in the counter.
+   *
+   * @param key
+   * @return whether the counter contains the key
+   */
+  public boolean containsKey(int key) {
+    return key >= 0 && keys[slot(key)] != EMPTY;
+  }
+
+  /**
+   * Get the count of the key, or zero if the key is not in the counter.
+   *
+   * @param key
+   */
+  public double getCount(int key) {
+    return key < 0 ? 0.0 : values[slot(key)];  // (empty slots always hold a count of zero)
+  }
+
+  /**
+   * Set the count for the given key, clobbering any previous count.
+   *
+   * @param key A non-negative key
+   * @param count
+   */
+  public void setCount(int key, double count) {
+    int slot = insert(key);  // (before reading values, which insert() may replace)
+    values[slot] = count;
+  }
+
+  /**
+   * Increment a key's count by the given amount.
+   *
+   * @param key A non-negative key
+   * @param increment
+   */
+  public void incrementCount(int key, double increment) {
+    int slot = insert(key);  // (before reading values, which insert() may replace)
+    values[slot] += increment;
+  }
+
+  /**
+   * Increment every key of another counter by its count there.
+   */
+  public void incrementAll(IntDoubleCounter counter) {
+    for (int slot = 0; slot < counter.keys.length; slot++) {
+      if (counter.keys[slot] != EMPTY) incrementCount(counter.keys[slot], counter.values[slot]);
+    }
+  }
+
+  /**
+   * Finds the total of all counts in the counter.  This implementation iterates
+   * through the entire counter every time this method is called.
+   *
+   * @return the counter's total
+   */
+  public double totalCount() {
+    double total = 0.0;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != EMPTY) total += values[slot];
+    }
+    return total;
+  }
+
+  /**
+   * Finds the key with maximum count.  This is a linear operation, and ties are broken arbitrarily.
+   *
+   * @return a key with maximum count, or -1 if the counter is empty
+   */
+  public int argMax() {
+    double maxCount = Double.NEGATIVE_INFINITY;
+    int maxKey = EMPTY;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != EMPTY && (values[slot] > maxCount || maxKey == EMPTY)) {
+        maxKey = keys[slot];
+        maxCount = values[slot];
+      }
+    }
+    return maxKey;
+  }
+
+  /**
+   * Returns a string representation with the keys ordered by decreasing
+   * counts.
+   *
+   * @return string representation
+   */
+  public String toString() {
+    return toString(size);
+  }
+
+  /**
+   * Returns a string representation which includes no more than the
+   * maxKeysToPrint keys with largest counts.
+   *
+   * @param maxKeysToPrint
+   * @return partial string representation
+   */
+  public String toString(int maxKeysToPrint) {
+    return asPriorityQueue().toString(maxKeysToPrint);
+  }
+
+  /**
+   * Builds a priority queue whose elements are the counter's keys, and
+   * whose priorities are those keys' counts in the counter.
+   */
+  public PriorityQueue<Integer> asPriorityQueue() {
+    PriorityQueue<Integer> pq = new PriorityQueue<Integer>(size);
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != EMPTY) pq.add(keys[slot], values[slot]);
+    }
+    return pq;
+  }
+
+  /**
+   * Builds a priority queue whose elements are the objects the counter's keys
+   * index, and whose priorities are those keys' counts in the counter.
+   *
+   * @param index The indexer the keys of this counter were taken from
+   */
+  public <E> PriorityQueue<E> asPriorityQueue(Indexer<E> index) {
+    PriorityQueue<E> pq = new PriorityQueue<E>(size);
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != EMPTY) pq.add(index.get(keys[slot]), values[slot]);
+    }
+    return pq;
+  }
+
+  // -----------------------------------------------------------------------
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /*
+   * The slot holding a key, or the empty slot where it would be inserted
+   */
+  private int slot(int key) {
+    int slot = hash(key) & mask;
+    int found;
+    while ((found = keys[slot]) != EMPTY && found != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /*
+   * The slot holding a key, inserting it with a count of zero if it is not present
+   */
+  private int insert(int key) {
+    if (key < 0) throw new IllegalArgumentException("Negative key: " + key);
+    int slot = slot(key);
+    if (keys[slot] == EMPTY) {
+      if (2 * (size + 1) > keys.length) {
+        grow();
+        slot = slot(key);
+      }
+      keys[slot] = key;
+      size += 1;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    double[] oldValues = values;
+    allocate(2 * oldKeys.length);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /*
+   * The smallest table at most half full with a number of keys
+   */
+  private static int capacityFor(int expectedSize) {
+    int capacity = 4;
+    while (capacity < 2 * expectedSize) capacity <<= 1;
+    return capacity;
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+    values = new double[capacity];
+    mask = capacity - 1;
+  }
+
+  public IntDoubleCounter() {
+    this(8);
+  }
+
+  /**
+   * Create a counter with room for a number of keys before its table grows
+   *
+   * @param expectedSize The number of keys expected
+   */
+  public IntDoubleCounter(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  public static void main(String[] args) {
+    Indexer<String> index = new Indexer<String>();
+    IntDoubleCounter counter = new IntDoubleCounter();
+    System.out.println(counter);
+    counter.incrementCount(index.addAndGetIndex("planets"), 7);
+    System.out.println(counter.asPriorityQueue(index));
+    counter.incrementCount(index.addAndGetIndex("planets"), 1);
+    System.out.println(counter.asPriorityQueue(index));
+    counter.setCount(index.addAndGetIndex("suns"), 1);
+    System.out.println(counter.asPriorityQueue(index));
+    counter.setCount(index.addAndGetIndex("aliens"), 0);
+    System.out.println(counter.asPriorityQueue(index));
+    System.out.println(counter.asPriorityQueue(index).toString(2));
+    System.out.println("Argmax: " + index.get(counter.argMax()));
+    System.out.println("Total: " + counter.totalCount());
+  }
+}
@@ -0,0 +1,110 @@
+package cs224n.util;
+
+import java.util.Arrays;
+
+/**
+ * The Kuhn-Munkres (Hungarian) algorithm for the assignment problem: find the
+ * one-to-one matching of rows to columns of a weight matrix with the largest total
+ * weight. This is the version with row and column potentials which adds one row at a
+ * time, and runs in O(n^2 m) time for n rows and m columns (n &lt;= m).
+ */
+public class KuhnMunkres {
+
+  private KuhnMunkres(){ }
+
+  /**
+   * Find the assignment of maximum total weight
+   * @param weights The weight of matching each row to each column; the matrix
+   *                need not be square, but every row must have the same length
+   * @return For each row, the column it is matched to, or -1 if it is not matched
+   *         (only possible when there are more rows than columns)
+   */
+  public static int[] maximize(double[][] weights){
+    int rows = weights.length;
+    int cols = rows == 0 ? 0 : weights[0].length;
+    int[] rtn = new int[rows];
+    Arrays.fill(rtn, -1);
+    if(rows == 0 || cols == 0){ return rtn; }
+    if(rows <= cols){
+      int[] colOfRow = solve(weights, rows, cols, false);
+      System.arraycopy(colOfRow, 0, rtn, 0, rows);
+    } else {
+      //(solve the transposed problem, so that rows <= columns)
+      int[] rowOfCol = solve(weights, cols, rows, true);
+      for(int c=0; c<cols; c++){ rtn[rowOfCol[c]] = c; }
+    }
+    return rtn;
+  }
+
+  /**
+   * The total weight of an assignment
+   * @param weights The weight matrix
+   * @param assignment The column of each row, or -1
+   * @return The sum of the weights of the matched cells
+   */
+  public static double weight(double[][] weights, int[] assignment){
+    double rtn = 0.0;
+    for(int r=0; r<assignment.length; r++){
+      if(assignment[r] >= 0){ rtn += weights[r][assignment[r]]; }
+    }
+    return rtn;
+  }
+
+  /*
+   * Minimize the cost (the negated weight) over an n x m matrix, n <= m.
+   * Indices are 1-based internally; index 0 is a virtual column.
+   */
+  private static int[] solve(double[][] weights, int n, int m, boolean transposed){
+    double[] u = new double[n+1];
+    double[] v = new double[m+1];
+    int[] p = new int[m+1];     // the row matched to each column (0 if none)
+    int[] way = new int[m+1];
+    double[] minv = new double[m+1];
+    boolean[] used = new boolean[m+1];
+    for(int i=1; i<=n; i++){
+      p[0] = i;
+      int j0 = 0;
+      Arrays.fill(minv, Double.POSITIVE_INFINITY);
+      Arrays.fill(used, false);
+      do {
+        used[j0] = true;
+        int i0 = p[j0];
+        double delta = Double.POSITIVE_INFINITY;
+        int j1 = 0;
+        for(int j=1; j<=m; j++){
+          if(used[j]){ continue; }
+          double cost = -(transposed ? weights[j-1][i0-1] : weights[i0-1][j-1]);
+          double cur = cost - u[i0] - v[j];
+          if(cur < minv[j]){
+            minv[j] = cur;
+            way[j] = j0;
+          }
+          if(minv[j] < delta){
+            delta = minv[j];
+            j1 = j;
+          }
+        }
+        for(int j=0; j<=m; j++){
+          if(used[j]){
+            u[p[j]] += delta;
+            v[j] -= delta;
+          } else {
+            minv[j] -= delta;
+          }
+        }
+        j0 = j1;
+      } while(p[j0] != 0);
+      //(augment along the path found)
+      do {
+        int j1 = way[j0];
+        p[j0] = p[j1];
+        j0 = j1;
+      } while(j0 != 0);
+    }
+    int[] colOfRow = new int[n];
+    for(int j=1; j<=m; j++){
+      if(p[j] != 0){ colOfRow[p[j]-1] = j-1; }
+    }
+    return colOfRow;
+  }
+}
@@ -0,0 +1,164 @@
+package cs224n.util;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * Iterates over the elements of a {@link WeakReferenceList.RefreshFunction} in order,
+ * computing upcoming elements on background threads while the caller works on the
+ * current one.
+ *
+ * At most <code>depth</code> elements are computed ahead of the caller, so memory use is
+ * bounded. The iterator records how long the caller spent waiting for an element
+ * (a stall), and how many computed elements were waiting in the queue whenever the
+ * caller asked for one: frequent stalls mean the consumer is faster than the producers
+ * (I/O or decode bound); a full queue means the consumer is the bottleneck (CPU bound).
+ *
+ * The source's get() method must be safe to call from multiple threads.
+ */
+public class ReadAheadIterator<E> implements Iterator<E> {
+  private final WeakReferenceList.RefreshFunction<E> source;
+  private final int end;
+  private final int depth;
+  private final ThreadPoolExecutor pool;
+  private final LinkedList<Future<E>> window = new LinkedList<Future<E>>();
+  private int nextToSubmit;
+
+  private final long startTime = System.nanoTime();
+  private long elementsTaken = 0;
+  private long stalls = 0;
+  private long stallNanos = 0;
+  private long readySum = 0;
+  private int readyMax = 0;
+
+  /**
+   * Iterate over all the elements of a source
+   * @param source The source of the elements
+   * @param depth The maximum number of elements to compute ahead of the caller
+   * @param threads The number of threads computing elements
+   */
+  public ReadAheadIterator(WeakReferenceList.RefreshFunction<E> source, int depth, int threads){
+    this(source, 0, source.size(), depth, threads);
+  }
+
+  /**
+   * Iterate over a range of elements of a source
+   * @param source The source of the elements
+   * @param begin The first index to iterate over
+   * @param end The index after the last index to iterate over
+   * @param depth The maximum number of elements to compute ahead of the caller
+   * @param threads The number of threads computing elements
+   */
+  public ReadAheadIterator(WeakReferenceList.RefreshFunction<E> source, int begin, int end, int depth, int threads){
+    if(depth <= 0){ throw new IllegalArgumentException("Read ahead depth must be positive: " + depth); }
+    if(threads <= 0){ throw new IllegalArgumentException("Read ahead threads must be positive: " + threads); }
+    this.source = source;
+    this.end = end;
+    this.depth = depth;
+    this.nextToSubmit = begin;
+    this.pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ReadAheadIterator");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    this.pool.allowCoreThreadTimeOut(true);
+    fill();
+  }
+
+  private void fill(){
+    while(window.size() < depth && nextToSubmit < end){
+      final int index = nextToSubmit;
+      window.addLast(pool.submit(new Callable<E>(){
+        public E call() {
+          return source.get(index);
+        }
+      }));
+      nextToSubmit += 1;
+    }
+  }
+
+  public boolean hasNext() {
+    return !window.isEmpty();
+  }
+
+  public E next() {
+    if(!hasNext()){ throw new NoSuchElementException(); }
+    //--Record Queue Depth
+    int ready = 0;
+    for(Future<E> future : window){
+      if(future.isDone()){ ready += 1; }
+    }
+    readySum += ready;
+    readyMax = Math.max(readyMax, ready);
+    elementsTaken += 1;
+    //--Get Element
+    Future<E> head = window.removeFirst();
+    E rtn;
+    try {
+      if(head.isDone()){
+        rtn = head.get();
+      } else {
+        stalls += 1;
+        long start = System.nanoTime();
+        rtn = head.get();
+        stallNanos += System.nanoTime() - start;
+      }
+    } catch (InterruptedException e) {
+      close();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      close();
+      if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+      throw new RuntimeException(e.getCause());
+    }
+    //--Refill
+    fill();
+    if(window.isEmpty()){ close(); }
+    return rtn;
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException("Cannot remove from a read ahead iterator");
+  }
+
+  /**
+   * Stop computing elements. Any remaining elements are discarded.
+   */
+  public void close(){
+    for(Future<E> future : window){ future.cancel(true); }
+    window.clear();
+    nextToSubmit = end;
+    pool.shutdownNow();
+  }
+
+  /**
+   * The number of times the caller had to wait for an element
+   */
+  public long stalls(){ return stalls; }
+
+  /**
+   * The total time, in seconds, the caller spent waiting for elements
+   */
+  public double stallSeconds(){ return ((double) stallNanos) / 1e9; }
+
+  /**
+   * The average number of computed elements waiting when the caller asked for one
+   */
+  public double averageQueueDepth(){ return elementsTaken == 0 ? 0.0 : ((double) readySum) / ((double) elementsTaken); }
+
+  /**
+   * A human-readable summary of the pipeline's behavior
+   * @return A String summarizing the pipeline counters
+   */
+  public String statistics(){
+    double elapsed = ((double) (System.nanoTime() - startTime)) / 1e9;
+    return String.format("elements=%d stalls=%d stall time=%.2fs (%.1f%% of %.2fs) queue depth avg=%.2f max=%d capacity=%d",
+        elementsTaken, stalls, stallSeconds(), elapsed == 0.0 ? 0.0 : 100.0 * stallSeconds() / elapsed, elapsed,
+        averageQueueDepth(), readyMax, depth);
+  }
+}
@@ -0,0 +1,56 @@
+package cs224n.util;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A read-only view of a list whose iterators compute upcoming elements in the
+ * background, using a {@link ReadAheadIterator}. Random access through get() goes
+ * straight to the backing list.
+ *
+ * The backing list's get() method must be safe to call from multiple threads.
+ */
+public class ReadAheadList<E> extends AbstractList<E> {
+  private final List<E> backing;
+  private final int depth;
+  private final int threads;
+  private ReadAheadIterator<E> lastIterator = null;
+
+  /**
+   * Create a read ahead view of a list
+   * @param backing The list to read from
+   * @param depth The maximum number of elements to compute ahead of the caller
+   * @param threads The number of threads computing elements
+   */
+  public ReadAheadList(List<E> backing, int depth, int threads){
+    this.backing = backing;
+    this.depth = depth;
+    this.threads = threads;
+  }
+
+  public E get(int i) {
+    return backing.get(i);
+  }
+
+  public int size() {
+    return backing.size();
+  }
+
+  public Iterator<E> iterator() {
+    ReadAheadIterator<E> iter = new ReadAheadIterator<E>(new WeakReferenceList.RefreshFunction<E>(){
+      public E get(int i) { return backing.get(i); }
+      public int size() { return backing.size(); }
+    }, depth, threads);
+    synchronized(this){ lastIterator = iter; }
+    return iter;
+  }
+
+  /**
+   * The statistics of the most recently created iterator
+   * @return A String summarizing the pipeline counters, or "(not iterated)"
+   */
+  public synchronized String statistics(){
+    return lastIterator == null ? "(not iterated)" : lastIterator.statistics();
+  }
+}
@@ -104,20 +104,23 @@ public class WeakReferenceList<E> implements List<E> {
 
   public E get(int i) {
     if(i < 0 || i >= size()){ throw new IndexOutOfBoundsException(""+i); }
-    E rtn = null;
-    while(rtn == null){
-      //(never accessed before)
-      if(!cache.containsKey(i)){ cache.put(i, new WeakReference<E>(refresh.get(i))); }
-      //(reference might have died)
+    //--Lookup
+    synchronized(this){
       WeakReference<E> ref = cache.get(i);
-      if(ref.get() == null){
-        ref = new WeakReference<E>(refresh.get(i));
-        cache.put(i,ref);
-      }
-      //(in theory, should be not null)
-      rtn = ref.get();
+      E rtn = ref == null ? null : ref.get();
+      if(rtn != null){ return rtn; }
+    }
+    //--Compute
+    //(outside the lock, so that other elements can be read meanwhile)
+    E computed = refresh.get(i);
+    //--Publish
+    synchronized(this){
+      WeakReference<E> ref = cache.get(i);
+      E rtn = ref == null ? null : ref.get();
+      if(rtn != null){ return rtn; } //(computed by another thread meanwhile; share its copy)
+      cache.put(i, new WeakReference<E>(computed));
+      return computed;
     }
-    return rtn;
   }
 
   public E set(int i, E e) {